@@ -0,0 +1,52 @@
+package cs481.postag;
+
+import java.util.*;
+
+/**
+ * The estimates of POSTag and POSTagBigram: add-one smoothed
+ * transitions, and maximum likelihood emissions with epsilon for pairs
+ * never seen.
+ */
+public class AddOneSmoothing implements Smoothing
+{
+    public String getName()
+    {
+	return "addone";
+    }
+
+    public float[] emissions(TrainingCounts counts, long[] keys, float[] missing)
+    {
+	missing[0] = HMMTagger.epsilon;
+
+	float[] p = new float[keys.length];
+	for(int i = 0; i < keys.length; i++) {
+	    int count = counts.cTagWord.get(keys[i]);
+	    int total = counts.cWord.get(Vocabulary.second(keys[i]));
+
+	    p[i] = (float)Math.log(((float)count) / ((float)total));
+	}
+	return p;
+    }
+
+    /**
+     * (count + 1) / (count of previous + number of tags), and
+     * 1 / number of tags for pairs never seen.
+     */
+    public float[] transitions(TrainingCounts counts)
+    {
+	int     numtags = counts.tagVocab.size();
+	float[] pTagTag = new float[numtags * numtags];
+	Arrays.fill(pTagTag, (float) Math.log(1/(float)numtags));
+
+	long[] ttkeys = counts.cTagTag.keys();
+	for(int i = 0; i < ttkeys.length; i++) {
+	    long key   = ttkeys[i];
+	    int  count = counts.cTagTag.get(key);
+	    int  total = counts.cTag.get(Vocabulary.first(key));
+
+	    pTagTag[Vocabulary.first(key) * numtags + Vocabulary.second(key)] =
+		(float)Math.log((((float)count)+1) / (((float)total)+numtags));
+	}
+	return pTagTag;
+    }
+}
@@ -0,0 +1,174 @@
+package cs481.postag;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts of what a MicroBatcher has done, safe to update from many
+ * threads.
+ *
+ * <pre>
+ * Typical use:
+ * MicroBatcher mb = new MicroBatcher(pt, 64, 500, 4);
+ * ...
+ * mb.getMetrics().print(System.out);
+ * </pre>
+ *
+ * Batch sizes and end-to-end latencies, from submit to the future
+ * being completed, go into histograms of power of two buckets like
+ * those of TaggerMetrics.  Queue depth is sampled each time a batch is
+ * made.
+ */
+public class BatchMetrics
+{
+    protected LongAdder       batches;
+    protected LongAdder       batched;
+    protected LongAdder       sentences;
+    protected LongAdder       depthSum;
+    protected AtomicLong      maxDepth;
+    protected LongAdder       nanos;
+    protected AtomicLongArray sizes;
+    protected AtomicLongArray latency;
+
+    /**
+     * Make zeroed metrics.
+     */
+    public BatchMetrics()
+    {
+	batches   = new LongAdder();
+	batched   = new LongAdder();
+	sentences = new LongAdder();
+	depthSum  = new LongAdder();
+	maxDepth  = new AtomicLong();
+	nanos     = new LongAdder();
+	sizes     = new AtomicLongArray(TaggerMetrics.BUCKETS);
+	latency   = new AtomicLongArray(TaggerMetrics.BUCKETS);
+    }
+
+    /**
+     * Set everything back to zero.
+     */
+    public void reset()
+    {
+	batches.reset();
+	batched.reset();
+	sentences.reset();
+	depthSum.reset();
+	maxDepth.set(0);
+	nanos.reset();
+	for(int i = 0; i < TaggerMetrics.BUCKETS; i++) {
+	    sizes.set(i, 0);
+	    latency.set(i, 0);
+	}
+    }
+
+    /**
+     * Count one batch as it is handed to a worker.
+     *
+     * @param size  Number of sentences in it
+     * @param depth Number of sentences still queued behind it
+     */
+    public void recordBatch(int size, int depth)
+    {
+	batches.increment();
+	batched.add(size);
+	depthSum.add(depth);
+	long m;
+	while(depth > (m = maxDepth.get()) && !maxDepth.compareAndSet(m, depth)) {
+	}
+	sizes.incrementAndGet(Math.min(TaggerMetrics.BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(size)));
+    }
+
+    /**
+     * Count one sentence whose future has been completed.
+     *
+     * @param elapsed Time from submit to completion, in nanoseconds
+     */
+    public void recordLatency(long elapsed)
+    {
+	sentences.increment();
+	nanos.add(elapsed);
+	latency.incrementAndGet(TaggerMetrics.bucket(elapsed));
+    }
+
+    public long getBatches()
+    {
+	return batches.sum();
+    }
+
+    public long getSentences()
+    {
+	return sentences.sum();
+    }
+
+    /**
+     * Mean number of sentences per batch.
+     *
+     * @return Sentences batched / batches, or 0 if there were none
+     */
+    public double getMeanBatchSize()
+    {
+	long b = batches.sum();
+	return (b == 0) ? 0.0 : ((double)batched.sum()) / b;
+    }
+
+    /**
+     * Mean number of sentences queued when a batch was made.
+     *
+     * @return The mean depth, or 0 if there were no batches
+     */
+    public double getMeanQueueDepth()
+    {
+	long b = batches.sum();
+	return (b == 0) ? 0.0 : ((double)depthSum.sum()) / b;
+    }
+
+    public long getMaxQueueDepth()
+    {
+	return maxDepth.get();
+    }
+
+    /**
+     * Approximate end-to-end latency percentile, from the histogram.
+     *
+     * @param p Percentile, from 0 to 100
+     * @return Upper bound of the bucket holding it, in microseconds
+     */
+    public long getLatencyPercentile(double p)
+    {
+	return TaggerMetrics.percentile(latency, p);
+    }
+
+    /**
+     * Print a summary and the non-empty histogram buckets.
+     *
+     * @param out Where to print
+     */
+    public void print(PrintStream out)
+    {
+	long s = getSentences();
+	out.println("Batches:          " + getBatches() +
+		    " (mean size " + (float)getMeanBatchSize() + ")");
+	out.println("Queue depth:      mean " + (float)getMeanQueueDepth() +
+		    ", max " + getMaxQueueDepth());
+	if(s > 0) {
+	    out.println("Mean end-to-end:  " + (nanos.sum() / s / 1000) + " us");
+	    out.println("p50/p99/p999:     <" + getLatencyPercentile(50) +
+			" us / <" + getLatencyPercentile(99) +
+			" us / <" + getLatencyPercentile(99.9) + " us");
+	}
+	for(int i = 0; i < TaggerMetrics.BUCKETS; i++) {
+	    long c = sizes.get(i);
+	    if(c > 0) {
+		String range = (i == 0) ? "1" : (1L << i) + "-" + ((1L << (i + 1)) - 1);
+		out.println("  " + range + " sentences: " + c);
+	    }
+	}
+	for(int i = 0; i < TaggerMetrics.BUCKETS; i++) {
+	    long c = latency.get(i);
+	    if(c > 0) {
+		out.println("  " + ((i == 0) ? 0 : (1L << i)) + "-" + (1L << (i + 1)) + " us: " + c);
+	    }
+	}
+    }
+}
@@ -0,0 +1,548 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Re-estimates a trained bigram model on untagged sentences by
+ * Baum-Welch (expectation maximization).
+ *
+ * <pre>
+ * Typical use:
+ * BaumWelch bw = new BaumWelch(model, CorpusReader.source("raw.xml"), 8);
+ * for(int i = 0; i < 10; i++) {
+ *     model = bw.iterate();
+ * }
+ * bw.close();
+ * </pre>
+ *
+ * Each iteration reads the sentences again from the source and runs
+ * forward-backward over each under the current model (the E-step),
+ * then estimates the emissions of known words and the transitions
+ * again from the expected counts (the M-step).  Only a batch of
+ * sentences is held at once; each batch is split into one shard of
+ * about the same number of tokens per thread.  Each thread has its own
+ * decoder and its own ExpectedCounts, which are merged in thread order
+ * once all batches are done, so the same number of threads always
+ * gives the same model.
+ *
+ * Emissions are P(tag | word), so a known word's entries become its
+ * expected tag counts over the number of times it occurs.  Words keep
+ * the tags they had, words in none of the sentences keep their
+ * probabilities, and unknown words keep the suffix model.  Transitions
+ * are add-one smoothed, but unlike AddOneSmoothing's each row sums to
+ * 1.
+ *
+ * The E-step turns the emissions into P(word | tag) by Bayes' rule,
+ * P(tag | word) P(word) / P(tag), with P(word) the frequency of the
+ * word (or of its suffix, if unknown) in the sentences and P(tag) the
+ * sum of P(tag | word) P(word) over them.  The log likelihood each
+ * iteration reports is then that of the sentences under a proper
+ * HMM.  It rises from one iteration to the next, except that it can
+ * fall after the first when the model was trained with add-one
+ * smoothing, whose transitions don't sum to 1.
+ */
+public class BaumWelch
+{
+    /**
+     * Number of sentences read before running the E-step on them, per
+     * thread
+     */
+    public static int batchPerThread = 4096;
+
+    /**
+     * The model the next iteration starts from
+     */
+    protected ModelSnapshot model;
+    /**
+     * Where the sentences are read from on each iteration
+     */
+    protected SentenceSource source;
+    /**
+     * Number of words in the sentences
+     */
+    protected int tokens;
+    /**
+     * Occurrences of each known word id in the sentences
+     */
+    protected int[] cWord;
+    /**
+     * Occurrences of each suffix node, for unknown words
+     */
+    protected int[] cSuffix;
+    /**
+     * Occurrences of unknown words without a suffix node
+     */
+    protected int cUnknown;
+    /**
+     * Sum of log P(word) over every word of the sentences
+     */
+    protected double logPWords;
+    /**
+     * Expected counts of each thread
+     */
+    protected ExpectedCounts[] shards;
+    /**
+     * Decoder of each thread
+     */
+    protected ViterbiDecoder[] decoders;
+    /**
+     * Posteriors of each thread's current sentence
+     */
+    protected float[][] gamma;
+    /**
+     * Word ids of each thread's current sentence
+     */
+    protected int[][] words;
+    /**
+     * Threads to run the shards on, or null to run them on the caller
+     */
+    protected ExecutorService pool;
+    /**
+     * Log likelihood found by the last iteration
+     */
+    protected double logLikelihood;
+    /**
+     * How long the last iteration took
+     */
+    protected long nanos;
+
+    /**
+     * Get ready to re-estimate a model, reading the sentences once to
+     * count their words.
+     *
+     * @param model     The model to start from, not a TrigramModel
+     * @param source    The untagged sentences, e.g. CorpusReader.source(fname)
+     * @param threads   Number of threads; 1 runs on the calling thread
+     */
+    public BaumWelch(ModelSnapshot model, SentenceSource source, int threads)
+    {
+	this.model  = model;
+	this.source = source;
+
+	cWord   = new int[model.wordVocab.size()];
+	cSuffix = new int[(model.suffixes == null) ? 0 : model.suffixes.size()];
+	Iterator sents = open();
+	try {
+	    while(sents.hasNext()) {
+		Vector sent = (Vector)sents.next();
+		for(int i = 0; i < sent.size(); i++) {
+		    int w = model.lookupWord(((Token)sent.get(i)).getName().toLowerCase());
+		    if(w >= 0) {
+			cWord[w]++;
+		    } else if(w == Vocabulary.UNKNOWN) {
+			cUnknown++;
+		    } else {
+			cSuffix[SuffixModel.node(w)]++;
+		    }
+		    tokens++;
+		}
+	    }
+	} finally {
+	    close(sents);
+	}
+
+	for(int w = 0; w < cWord.length; w++) {
+	    logPWords += xlogx(cWord[w]);
+	}
+	for(int n = 0; n < cSuffix.length; n++) {
+	    logPWords += xlogx(cSuffix[n]);
+	}
+	logPWords += xlogx(cUnknown);
+
+	int numtags = model.tags.length;
+	int n       = Math.max(1, threads);
+	shards   = new ExpectedCounts[n];
+	decoders = new ViterbiDecoder[n];
+	gamma    = new float[n][0];
+	words    = new int[n][0];
+	for(int i = 0; i < n; i++) {
+	    shards[i]   = new ExpectedCounts(numtags, model.pTagWord.size());
+	    decoders[i] = new ViterbiDecoder();
+	}
+	if(n > 1) {
+	    pool = Executors.newFixedThreadPool(n);
+	}
+    }
+
+    /**
+     * c log(c / tokens), the log P(word) of c occurrences of a word.
+     */
+    protected double xlogx(int c)
+    {
+	return (c == 0) ? 0.0 : c * Math.log(((double)c) / tokens);
+    }
+
+    /**
+     * Start reading the sentences again.
+     */
+    protected Iterator open()
+    {
+	try {
+	    return source.open();
+	} catch(IOException e) {
+	    throw new UncheckedIOException(e);
+	}
+    }
+
+    /**
+     * Close what open returned, if it can be.
+     */
+    protected static void close(Iterator sents)
+    {
+	if(sents instanceof Closeable) {
+	    try {
+		((Closeable)sents).close();
+	    } catch(IOException e) {
+		throw new UncheckedIOException(e);
+	    }
+	}
+    }
+
+    /**
+     * Run one iteration of EM.
+     *
+     * @return The new model, which the next iteration starts from
+     */
+    public ModelSnapshot iterate()
+    {
+	long t0 = System.nanoTime();
+
+	TagModel hmm = new Generative(model, logPrior());
+	for(int s = 0; s < shards.length; s++) {
+	    shards[s].clear();
+	}
+
+	int      size  = batchPerThread * shards.length;
+	Vector   batch = new Vector(size);
+	Iterator sents = open();
+	try {
+	    while(sents.hasNext()) {
+		batch.add(sents.next());
+		if(batch.size() == size || !sents.hasNext()) {
+		    expect(hmm, batch);
+		    batch.clear();
+		}
+	    }
+	} finally {
+	    close(sents);
+	}
+
+	ExpectedCounts total = shards[0];
+	for(int s = 1; s < shards.length; s++) {
+	    total.merge(shards[s]);
+	}
+	logLikelihood = total.logPaths + logPWords;
+	model         = maximize(total);
+
+	nanos = System.nanoTime() - t0;
+	return model;
+    }
+
+    /**
+     * Log P(tag) for the E-step: the sum over the words of the
+     * sentences of P(tag | word) P(word), over the tags the decoder
+     * lets each word have, so that P(word | tag) sums to 1 over them.
+     *
+     * @return Log P(tag) indexed by tag id; 0 for a tag no word may have
+     */
+    protected float[] logPrior()
+    {
+	int      numtags = model.tags.length;
+	double[] p       = new double[numtags];
+	float[]  emit    = new float[numtags];
+	int[]    tags    = new int[numtags];
+
+	for(int w = 0; w < cWord.length; w++) {
+	    addPrior(w, cWord[w], p, emit, tags);
+	}
+	for(int n = 0; n < cSuffix.length; n++) {
+	    addPrior(SuffixModel.wordId(n), cSuffix[n], p, emit, tags);
+	}
+	addPrior(Vocabulary.UNKNOWN, cUnknown, p, emit, tags);
+
+	float[] prior = new float[numtags];
+	for(int t = 0; t < numtags; t++) {
+	    prior[t] = (p[t] > 0) ? (float)Math.log(p[t] / tokens) : 0f;
+	}
+	return prior;
+    }
+
+    /**
+     * Add c times P(tag | word) to p for each tag the decoder lets a
+     * word have.
+     */
+    protected void addPrior(int word, int c, double[] p, float[] emit, int[] tags)
+    {
+	if(c == 0) {
+	    return;
+	}
+	int numtags = model.tags.length;
+	int n       = 0;
+	int found   = model.fillTags(word, tags, 0);
+	for(int b = 0; b < found; b++) {
+	    if(tags[b] != model.startTag) {
+		tags[n++] = tags[b];
+	    }
+	}
+	if(n == 0) {
+	    for(int t = 0; t < numtags; t++) {
+		if(t != model.startTag) {
+		    tags[n++] = t;
+		}
+	    }
+	}
+
+	model.fillEmissions(word, emit);
+	for(int b = 0; b < n; b++) {
+	    p[tags[b]] += c * Math.exp(emit[tags[b]]);
+	}
+    }
+
+    /**
+     * Run the E-step over a batch of sentences, one shard per thread.
+     *
+     * @param hmm   The model with Bayes-inverted emissions
+     * @param batch The sentences
+     */
+    protected void expect(final TagModel hmm, final Vector batch)
+    {
+	//Cut shards at about every tokens / n words
+	int   n     = Math.min(shards.length, batch.size());
+	int[] start = new int[n + 1];
+	long  total = 0;
+	for(int i = 0; i < batch.size(); i++) {
+	    total += ((Vector)batch.get(i)).size();
+	}
+	int  s    = 1;
+	long seen = 0;
+	for(int i = 0; i < batch.size() && s < n; i++) {
+	    seen += ((Vector)batch.get(i)).size();
+	    while(s < n && seen * n >= total * s) {
+		start[s++] = i + 1;
+	    }
+	}
+	while(s <= n) {
+	    start[s++] = batch.size();
+	}
+
+	if(pool == null || n == 1) {
+	    expect(0, hmm, batch, start[0], start[1]);
+	    return;
+	}
+
+	Vector tasks = new Vector();
+	for(int t = 0; t < n; t++) {
+	    final int shard = t;
+	    final int lo    = start[t];
+	    final int hi    = start[t + 1];
+	    tasks.add(new Callable() {
+		    public Object call() {
+			expect(shard, hmm, batch, lo, hi);
+			return null;
+		    }
+		});
+	}
+	try {
+	    for(Iterator i = pool.invokeAll(tasks).iterator(); i.hasNext();) {
+		((Future)i.next()).get();
+	    }
+	} catch(InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(e);
+	} catch(ExecutionException e) {
+	    throw new RuntimeException(e.getCause());
+	}
+    }
+
+    /**
+     * The E-step over one shard: forward-backward over each of its
+     * sentences, adding up the expected counts.
+     *
+     * @param s     Which thread
+     * @param hmm   The model with Bayes-inverted emissions
+     * @param batch The sentences
+     * @param lo    First sentence of the shard
+     * @param hi    Sentence after the shard's last
+     */
+    protected void expect(int s, TagModel hmm, Vector batch, int lo, int hi)
+    {
+	ExpectedCounts c       = shards[s];
+	ViterbiDecoder d       = decoders[s];
+	EmissionTable  e       = model.pTagWord;
+	int            numtags = model.tags.length;
+
+	for(int n = lo; n < hi; n++) {
+	    Vector sent = (Vector)batch.get(n);
+	    int    len  = sent.size();
+	    if(words[s].length < len) {
+		words[s] = new int[Math.max(len, words[s].length * 2)];
+	    }
+	    if(gamma[s].length < len * numtags) {
+		gamma[s] = new float[Math.max(len * numtags, gamma[s].length * 2)];
+	    }
+	    int[]   w = words[s];
+	    float[] g = gamma[s];
+	    for(int i = 0; i < len; i++) {
+		w[i] = model.lookupWord(((Token)sent.get(i)).getName().toLowerCase());
+	    }
+
+	    c.logPaths += d.posteriors(hmm, w, len, g);
+	    d.addTransitions(hmm, len, c.tagTag);
+	    for(int i = 0; i < len; i++) {
+		if(w[i] < 0) {
+		    continue;
+		}
+		for(int p = e.rowStart[w[i]]; p < e.rowStart[w[i] + 1]; p++) {
+		    c.tagWord[p] += g[i * numtags + e.rowTag[p]];
+		}
+	    }
+	}
+    }
+
+    /**
+     * The M-step: probabilities from expected counts.
+     *
+     * @param c Expected counts of all the sentences
+     * @return The model, not yet published
+     */
+    protected ModelSnapshot maximize(ExpectedCounts c)
+    {
+	int           numtags = model.tags.length;
+	EmissionTable e       = model.pTagWord;
+
+	float[] prob = new float[e.size()];
+	for(int w = 0; w < e.numWords(); w++) {
+	    double seen = 0.0;
+	    for(int p = e.rowStart[w]; p < e.rowStart[w + 1]; p++) {
+		seen += c.tagWord[p];
+	    }
+	    for(int p = e.rowStart[w]; p < e.rowStart[w + 1]; p++) {
+		if(seen == 0.0) {
+		    prob[p] = e.rowProb[p];
+		} else if(c.tagWord[p] > 0.0) {
+		    prob[p] = (float)Math.log(c.tagWord[p] / seen);
+		} else {
+		    prob[p] = HMMTagger.epsilon;
+		}
+	    }
+	}
+
+	float[] pTagTag = new float[numtags * numtags];
+	for(int t1 = 0; t1 < numtags; t1++) {
+	    double from = 0.0;
+	    for(int t2 = 0; t2 < numtags; t2++) {
+		from += c.tagTag[t1 * numtags + t2];
+	    }
+	    for(int t2 = 0; t2 < numtags; t2++) {
+		pTagTag[t1 * numtags + t2] =
+		    (float)Math.log((c.tagTag[t1 * numtags + t2] + 1) / (from + numtags));
+	    }
+	}
+
+	return new ModelSnapshot(model.tagVocab, model.startTag, model.wordVocab, model.pTag,
+				 new EmissionTable(e.rowStart, e.rowTag, prob), pTagTag,
+				 model.openTags, model.suffixes, model.missing, model.beam);
+    }
+
+    /**
+     * Log likelihood of the sentences under the model the last
+     * iteration started from, with the emissions turned into
+     * P(word | tag) as described above.
+     *
+     * @return The log likelihood
+     */
+    public double getLogLikelihood()
+    {
+	return logLikelihood;
+    }
+
+    /**
+     * How long the last iteration took.
+     *
+     * @return Nanoseconds
+     */
+    public long getNanos()
+    {
+	return nanos;
+    }
+
+    /**
+     * Number of words in the sentences.
+     *
+     * @return The number of tokens
+     */
+    public int getTokens()
+    {
+	return tokens;
+    }
+
+    /**
+     * Stop the threads.
+     */
+    public void close()
+    {
+	if(pool != null) {
+	    pool.shutdown();
+	}
+    }
+
+    /**
+     * A model whose emissions are P(word | tag) / P(word), i.e.
+     * P(tag | word) / P(tag), so that forward-backward sums the
+     * probabilities of the words, less the log P(word) of each.
+     */
+    protected static class Generative implements TagModel
+    {
+	protected ModelSnapshot model;
+	protected float[]       logPrior;
+
+	protected Generative(ModelSnapshot model, float[] logPrior)
+	{
+	    this.model    = model;
+	    this.logPrior = logPrior;
+	}
+
+	public String[] getTags() {
+	    return model.getTags();
+	}
+
+	public int getStartTag() {
+	    return model.getStartTag();
+	}
+
+	public float[] getTransitions() {
+	    return model.getTransitions();
+	}
+
+	public int lookupWord(String word) {
+	    return model.lookupWord(word);
+	}
+
+	public void fillEmissions(int word, float[] out) {
+	    model.fillEmissions(word, out);
+	    for(int t = 0; t < logPrior.length; t++) {
+		out[t] -= logPrior[t];
+	    }
+	}
+
+	public int fillTags(int word, int[] out, int off) {
+	    return model.fillTags(word, out, off);
+	}
+
+	public EmissionCache getEmissionCache() {
+	    return null;
+	}
+
+	public int getBeam() {
+	    return 0;
+	}
+
+	public TagModel getSnapshot() {
+	    return this;
+	}
+    }
+}
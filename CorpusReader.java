@@ -0,0 +1,359 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.io.*;
+import java.util.*;
+import javax.xml.stream.*;
+
+/**
+ * Reads sentences from a corpus XML file one at a time.
+ *
+ * <pre>
+ * Typical use:
+ * CorpusReader cr = new CorpusReader(new FileInputStream("train.xml"));
+ * while(cr.hasNext()) {
+ *     Vector sent = (Vector)cr.next();
+ *     ...
+ * }
+ * cr.close();
+ * </pre>
+ *
+ * Unlike Token.readXML, only the current sentence is held in memory,
+ * so a corpus of any size can be read in constant space.  Paragraphs
+ * are elements named paraElement containing sentence elements named
+ * sentElement, each containing one word element per token; the text of
+ * a word element is the token name and its XML attributes become token
+ * attributes.
+ *
+ * A document with no sentence elements of that name is not in this
+ * layout.  A reader opened on a file name then falls back on reading
+ * the whole file with Token.readXML; one reading a stream cannot go
+ * back, so it throws instead of returning no sentences.
+ */
+public class CorpusReader implements Iterator, Closeable
+{
+    /**
+     * Default paragraph element name
+     */
+    public static String paraElement = "p";
+    /**
+     * Default sentence element name
+     */
+    public static String sentElement = "s";
+    /**
+     * Default word element name
+     */
+    public static String wordElement = "w";
+
+    /**
+     * Name of the file being read, or null for a stream
+     */
+    protected String fname;
+    /**
+     * The XML being read
+     */
+    protected InputStream stream;
+    /**
+     * The parser
+     */
+    protected XMLStreamReader xml;
+    /**
+     * Element names used by this reader
+     */
+    protected String para, sent, word;
+    /**
+     * Sentence read ahead by hasNext, or null
+     */
+    protected Vector pending;
+    /**
+     * Paragraph number of pending
+     */
+    protected int pendingPara;
+    /**
+     * Number of paragraphs started so far
+     */
+    protected int paragraphs;
+    /**
+     * Paragraph number of the sentence last returned by next
+     */
+    protected int paragraph;
+    /**
+     * Number of sentence elements read so far
+     */
+    protected int sentences;
+    /**
+     * Name of the document element, once it has been read
+     */
+    protected String root;
+    /**
+     * Names of the XML attributes of the word elements read so far, in
+     * the order they were first seen; synchronized, since a writer on
+     * another thread may read it
+     */
+    protected Set attribs;
+    /**
+     * Paragraphs read by Token.readXML, or null if the XML is in the
+     * layout this reader parses
+     */
+    protected Vector fallback;
+    /**
+     * Paragraph and sentence in fallback of the next sentence
+     */
+    protected int fallbackPara, fallbackSent;
+
+    /**
+     * Read a corpus file with the default element names, or with
+     * Token.readXML if it has none of them.
+     *
+     * @param fname Name of the XML file
+     */
+    public CorpusReader(String fname) throws IOException
+    {
+	this(new FileInputStream(fname));
+	this.fname = fname;
+    }
+
+    /**
+     * Read a corpus with the default element names.
+     *
+     * @param in The XML to read
+     */
+    public CorpusReader(InputStream in) throws IOException
+    {
+	this(in, paraElement, sentElement, wordElement);
+    }
+
+    /**
+     * Read a corpus with the given element names.
+     *
+     * @param in   The XML to read
+     * @param para Paragraph element name
+     * @param sent Sentence element name
+     * @param word Word element name
+     */
+    public CorpusReader(InputStream in, String para, String sent, String word) throws IOException
+    {
+	this.para = para;
+	this.sent = sent;
+	this.word = word;
+	attribs    = Collections.synchronizedSet(new LinkedHashSet());
+	paragraphs = 0;
+	paragraph  = -1;
+	stream     = new BufferedInputStream(in);
+
+	try {
+	    XMLInputFactory f = XMLInputFactory.newInstance();
+	    f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+	    xml = f.createXMLStreamReader(stream);
+	} catch(XMLStreamException e) {
+	    throw new IOException(e.getMessage());
+	}
+    }
+
+    /**
+     * Whether another sentence remains.
+     *
+     * @return true if next will return a sentence
+     * @throws UncheckedIOException If the XML is malformed
+     */
+    public boolean hasNext()
+    {
+	if(pending == null) {
+	    try {
+		if(fallback != null) {
+		    pending = nextFallback();
+		} else {
+		    pending = readSentence();
+		    if(pending == null && sentences == 0) {
+			pending = startFallback();
+		    }
+		}
+	    } catch(XMLStreamException e) {
+		throw new UncheckedIOException(new IOException(e.getMessage()));
+	    }
+	}
+	return pending != null;
+    }
+
+    /**
+     * The next sentence.
+     *
+     * @return A Vector of Tokens
+     */
+    public Object next()
+    {
+	if(!hasNext()) {
+	    throw new NoSuchElementException();
+	}
+	Vector s = pending;
+	paragraph = pendingPara;
+	pending   = null;
+	return s;
+    }
+
+    /**
+     * Paragraph number (from 0) of the sentence last returned by next.
+     *
+     * @return The paragraph number
+     */
+    public int paragraph()
+    {
+	return paragraph;
+    }
+
+    /**
+     * A source that opens a new reader on a file each time.
+     *
+     * @param fname Name of the XML file
+     * @return The source
+     */
+    public static SentenceSource source(final String fname)
+    {
+	return new SentenceSource() {
+		public Iterator open() throws IOException {
+		    return new CorpusReader(fname);
+		}
+	    };
+    }
+
+    /**
+     * Stop reading.
+     */
+    public void close() throws IOException
+    {
+	try {
+	    xml.close();
+	} catch(XMLStreamException e) {
+	    throw new IOException(e.getMessage());
+	} finally {
+	    stream.close();
+	}
+    }
+
+    /**
+     * Parse up to the end of the next sentence element.
+     *
+     * @return The sentence, or null at the end of the document
+     */
+    protected Vector readSentence() throws XMLStreamException
+    {
+	Vector s = null;
+
+	while(xml.hasNext()) {
+	    int ev = xml.next();
+
+	    if(ev == XMLStreamConstants.START_ELEMENT) {
+		String name = xml.getLocalName();
+		if(root == null) {
+		    root = name;
+		}
+		if(name.equals(para)) {
+		    paragraphs++;
+		} else if(name.equals(sent)) {
+		    s = new Vector();
+		    sentences++;
+		} else if(name.equals(word) && s != null) {
+		    s.add(readToken());
+		}
+	    } else if(ev == XMLStreamConstants.END_ELEMENT && s != null &&
+		      xml.getLocalName().equals(sent)) {
+		//Sentences outside any paragraph count as paragraph 0
+		pendingPara = Math.max(paragraphs - 1, 0);
+		return s;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Called at the end of a document with no sentence elements: read
+     * the file again with Token.readXML.
+     *
+     * @return The first sentence it has, or null
+     * @throws UncheckedIOException If reading a stream, or Token.readXML fails
+     */
+    protected Vector startFallback()
+    {
+	if(fname == null) {
+	    throw new UncheckedIOException(new IOException("No <" + sent + "> sentence elements found; the corpus is in another layout"));
+	}
+
+	InputStream in = null;
+	try {
+	    in       = new BufferedInputStream(new FileInputStream(fname));
+	    fallback = Token.readXML(in);
+	} catch(Exception e) {
+	    throw new UncheckedIOException(new IOException(fname + ": " + e.getMessage()));
+	} finally {
+	    try {
+		if(in != null) {
+		    in.close();
+		}
+	    } catch(IOException e) {
+	    }
+	}
+	fallbackPara = 0;
+	fallbackSent = 0;
+	return nextFallback();
+    }
+
+    /**
+     * The next sentence read by Token.readXML.
+     *
+     * @return The sentence, or null after the last
+     */
+    protected Vector nextFallback()
+    {
+	while(fallbackPara < fallback.size()) {
+	    Vector para = (Vector)fallback.get(fallbackPara);
+	    if(fallbackSent < para.size()) {
+		pendingPara = fallbackPara;
+		return (Vector)para.get(fallbackSent++);
+	    }
+	    fallbackPara++;
+	    fallbackSent = 0;
+	}
+	return null;
+    }
+
+    /**
+     * Whether the sentences came from Token.readXML rather than from
+     * parsing the layout described above.  Only known once hasNext has
+     * returned a sentence.
+     *
+     * @return true if reading fell back on Token.readXML
+     */
+    public boolean usedTokenXML()
+    {
+	return fallback != null;
+    }
+
+    /**
+     * Make a Token from the word element the parser is on.
+     *
+     * @return The token
+     */
+    protected Token readToken() throws XMLStreamException
+    {
+	int      n     = xml.getAttributeCount();
+	String[] names = new String[n];
+	String[] vals  = new String[n];
+	for(int i = 0; i < n; i++) {
+	    names[i] = xml.getAttributeLocalName(i);
+	    vals[i]  = xml.getAttributeValue(i);
+	    attribs.add(names[i]);
+	}
+
+	Token tok = new Token(xml.getElementText().trim());
+	for(int i = 0; i < n; i++) {
+	    tok.putAttrib(names[i], vals[i]);
+	}
+	return tok;
+    }
+
+    public void remove()
+    {
+	throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,247 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.io.*;
+import java.util.*;
+import javax.xml.stream.*;
+
+/**
+ * Writes tagged sentences to a corpus XML file one at a time.
+ *
+ * <pre>
+ * Typical use:
+ * CorpusWriter cw = new CorpusWriter(new FileOutputStream("out.xml"));
+ * cw.writeSentence(sent, paragraph);
+ * cw.close();
+ * </pre>
+ *
+ * The layout is the one CorpusReader reads: a document element holding
+ * paragraph elements of sentence elements of word elements.  Each word
+ * element has the token name as its text and the token's
+ * &quot;pos&quot; attribute, if set.
+ *
+ * A writer made for a CorpusReader writes its output like the
+ * reader's input: with the same document and element names, and with
+ * every attribute the reader found on the input tokens.  If the reader
+ * fell back on Token.readXML, the sentences are kept until close and
+ * written with Token.writeXML.
+ */
+public class CorpusWriter
+{
+    /**
+     * Default document element name
+     */
+    public static String docElement = "document";
+
+    /**
+     * The XML being written
+     */
+    protected OutputStream stream;
+    /**
+     * The serializer
+     */
+    protected XMLStreamWriter xml;
+    /**
+     * Element names used by this writer
+     */
+    protected String para, sent, word;
+    /**
+     * Paragraph number of the open paragraph element, or -1
+     */
+    protected int paragraph;
+    /**
+     * Reader whose input this writer copies the layout of, or null
+     */
+    protected CorpusReader like;
+    /**
+     * Whether the document element has been started
+     */
+    protected boolean started;
+    /**
+     * Paragraphs kept for Token.writeXML, or null
+     */
+    protected Vector paras;
+
+    /**
+     * Write a corpus with the default element names.
+     *
+     * @param out Where to write the XML
+     */
+    public CorpusWriter(OutputStream out) throws IOException
+    {
+	this(out, CorpusReader.paraElement, CorpusReader.sentElement, CorpusReader.wordElement);
+    }
+
+    /**
+     * Write a corpus with the given element names.
+     *
+     * @param out  Where to write the XML
+     * @param para Paragraph element name
+     * @param sent Sentence element name
+     * @param word Word element name
+     */
+    public CorpusWriter(OutputStream out, String para, String sent, String word) throws IOException
+    {
+	this.para = para;
+	this.sent = sent;
+	this.word = word;
+	paragraph = -1;
+	stream    = new BufferedOutputStream(out);
+
+	try {
+	    xml = XMLOutputFactory.newInstance().createXMLStreamWriter(stream, "UTF-8");
+	} catch(XMLStreamException e) {
+	    throw new IOException(e.getMessage());
+	}
+    }
+
+    /**
+     * Write sentences read by a CorpusReader in the same layout as its
+     * input.
+     *
+     * @param out  Where to write the XML
+     * @param like The reader of the input
+     */
+    public CorpusWriter(OutputStream out, CorpusReader like) throws IOException
+    {
+	this(out, like.para, like.sent, like.word);
+	this.like = like;
+    }
+
+    /**
+     * Start the document, once the reader has read enough to know its
+     * layout.
+     */
+    protected void start() throws XMLStreamException
+    {
+	started = true;
+	if(like != null && like.usedTokenXML()) {
+	    paras = new Vector();
+	    return;
+	}
+
+	String root = (like != null && like.root != null) ? like.root : docElement;
+	xml.writeStartDocument("UTF-8", "1.0");
+	xml.writeCharacters("\n");
+	xml.writeStartElement(root);
+	xml.writeCharacters("\n");
+    }
+
+    /**
+     * Write one sentence, starting a new paragraph element if needed.
+     *
+     * @param s          A Vector of Tokens
+     * @param paragraphNum Paragraph the sentence belongs to, e.g. from CorpusReader.paragraph
+     */
+    public void writeSentence(Vector s, int paragraphNum) throws IOException
+    {
+	try {
+	    if(!started) {
+		start();
+	    }
+	    if(paras != null) {
+		while(paras.size() <= paragraphNum) {
+		    paras.add(new Vector());
+		}
+		((Vector)paras.get(paragraphNum)).add(s);
+		return;
+	    }
+
+	    if(paragraphNum != paragraph) {
+		if(paragraph != -1) {
+		    xml.writeEndElement();
+		    xml.writeCharacters("\n");
+		}
+		xml.writeStartElement(para);
+		xml.writeCharacters("\n");
+		paragraph = paragraphNum;
+	    }
+
+	    //The reader may still be adding to like.attribs on another thread
+	    Object[] names = new Object[0];
+	    if(like != null) {
+		synchronized(like.attribs) {
+		    names = like.attribs.toArray();
+		}
+	    }
+
+	    xml.writeStartElement(sent);
+	    for(Iterator i = s.iterator(); i.hasNext();) {
+		Token tok = (Token)i.next();
+
+		xml.writeStartElement(word);
+		writeAttribute(tok, "pos");
+		for(int a = 0; a < names.length; a++) {
+		    if(!names[a].equals("pos")) {
+			writeAttribute(tok, (String)names[a]);
+		    }
+		}
+		xml.writeCharacters(tok.getName());
+		xml.writeEndElement();
+	    }
+	    xml.writeEndElement();
+	    xml.writeCharacters("\n");
+	} catch(XMLStreamException e) {
+	    throw new IOException(e.getMessage());
+	}
+    }
+
+    /**
+     * Write one of a token's attributes, if it is set.
+     *
+     * @param tok  The token
+     * @param name The attribute name
+     */
+    protected void writeAttribute(Token tok, String name) throws XMLStreamException
+    {
+	Object val = tok.getAttrib(name);
+	if(val != null) {
+	    xml.writeAttribute(name, val.toString());
+	}
+    }
+
+    /**
+     * Push what has been written so far out to the stream.
+     */
+    public void flush() throws IOException
+    {
+	try {
+	    xml.flush();
+	} catch(XMLStreamException e) {
+	    throw new IOException(e.getMessage());
+	}
+    }
+
+    /**
+     * Close any open elements and the stream.
+     */
+    public void close() throws IOException
+    {
+	try {
+	    if(!started) {
+		start();
+	    }
+	    if(paras != null) {
+		xml.close();
+		Token.writeXML(paras, stream);
+		stream.flush();
+		return;
+	    }
+	    if(paragraph != -1) {
+		xml.writeEndElement();
+		xml.writeCharacters("\n");
+	    }
+	    xml.writeEndElement();
+	    xml.writeCharacters("\n");
+	    xml.writeEndDocument();
+	    xml.close();
+	} catch(IOException e) {
+	    throw e;
+	} catch(Exception e) {
+	    throw new IOException(e.getMessage());
+	} finally {
+	    stream.close();
+	}
+    }
+}
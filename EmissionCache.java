@@ -0,0 +1,189 @@
+package cs481.postag;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A bounded cache of EmissionRows by token text, safe to use from many
+ * threads.
+ *
+ * <pre>
+ * Typical use:
+ * EmissionCache cache = new EmissionCache(model, 65536);
+ * EmissionRow row = cache.get(tok.getName());
+ * </pre>
+ *
+ * Text is Zipfian, so a few thousand tokens make up most of it; once
+ * they are cached a token costs one hash lookup instead of lowercasing,
+ * vocabulary and suffix lookups and filling a row of every tag.  The
+ * cache is split into segments, each its own least recently used map
+ * under its own lock, so threads seldom wait on each other.
+ */
+public class EmissionCache
+{
+    /**
+     * Capacity of the cache each tagger makes when it is trained or loaded
+     */
+    public static int defaultCapacity = 65536;
+    /**
+     * Number of segments (a power of 2)
+     */
+    public static final int SEGMENTS = 16;
+
+    /**
+     * Model the rows come from
+     */
+    protected TagModel model;
+    /**
+     * The segments, chosen by hash of the token
+     */
+    protected Segment[] segments;
+
+    protected LongAdder hits;
+    protected LongAdder misses;
+    protected LongAdder evictions;
+
+    /**
+     * Make an empty cache.
+     *
+     * @param model    The model to look tokens up in
+     * @param capacity Most tokens to keep
+     */
+    public EmissionCache(TagModel model, int capacity)
+    {
+	this.model = model;
+	segments   = new Segment[SEGMENTS];
+	for(int i = 0; i < SEGMENTS; i++) {
+	    segments[i] = new Segment(Math.max(1, capacity / SEGMENTS));
+	}
+	hits      = new LongAdder();
+	misses    = new LongAdder();
+	evictions = new LongAdder();
+    }
+
+    /**
+     * The row of a token, worked out and kept if not already cached.
+     *
+     * @param token The token's text, not lowercased
+     * @return Its row
+     */
+    public EmissionRow get(String token)
+    {
+	//Top bits of a mixed hash: the low bits pick the bucket within a
+	//segment, and sharing them would crowd each segment into a
+	//sixteenth of its buckets
+	int     h   = token.hashCode() * 0x9E3779B9;
+	Segment seg = segments[h >>> (32 - Integer.numberOfTrailingZeros(SEGMENTS))];
+
+	EmissionRow row;
+	synchronized(seg) {
+	    row = (EmissionRow)seg.get(token);
+	}
+	if(row != null) {
+	    hits.increment();
+	    return row;
+	}
+
+	//Work the row out without the lock; two threads may both do it
+	misses.increment();
+	row = new EmissionRow(model, token);
+	synchronized(seg) {
+	    seg.put(token, row);
+	}
+	return row;
+    }
+
+    /**
+     * Forget every row.
+     */
+    public void clear()
+    {
+	for(int i = 0; i < SEGMENTS; i++) {
+	    synchronized(segments[i]) {
+		segments[i].clear();
+	    }
+	}
+    }
+
+    /**
+     * Number of tokens cached.
+     *
+     * @return The number of rows held
+     */
+    public int size()
+    {
+	int n = 0;
+	for(int i = 0; i < SEGMENTS; i++) {
+	    synchronized(segments[i]) {
+		n += segments[i].size();
+	    }
+	}
+	return n;
+    }
+
+    public long getHits()
+    {
+	return hits.sum();
+    }
+
+    public long getMisses()
+    {
+	return misses.sum();
+    }
+
+    public long getEvictions()
+    {
+	return evictions.sum();
+    }
+
+    /**
+     * Fraction of lookups found in the cache.
+     *
+     * @return Hits / lookups, or 0 if there were none
+     */
+    public double getHitRate()
+    {
+	long h = hits.sum();
+	long n = h + misses.sum();
+	return (n == 0) ? 0.0 : ((double)h) / n;
+    }
+
+    /**
+     * Print the hit and miss counts.
+     *
+     * @param out Where to print
+     */
+    public void print(PrintStream out)
+    {
+	out.println("Cache hits:       " + getHits() +
+		    " (" + (float)(100.0 * getHitRate()) + "%)");
+	out.println("Cache misses:     " + getMisses() +
+		    ", evictions " + getEvictions() + ", size " + size());
+    }
+
+    /**
+     * A least recently used map of at most max tokens.
+     */
+    protected class Segment extends LinkedHashMap
+    {
+	private static final long serialVersionUID = 1L;
+
+	protected int max;
+
+	protected Segment(int max)
+	{
+	    super(16, 0.75f, true);
+	    this.max = max;
+	}
+
+	protected boolean removeEldestEntry(Map.Entry eldest)
+	{
+	    if(size() > max) {
+		evictions.increment();
+		return true;
+	    }
+	    return false;
+	}
+    }
+}
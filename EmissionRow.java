@@ -0,0 +1,46 @@
+package cs481.postag;
+
+import java.util.*;
+
+/**
+ * The tags a token may have and their log probabilities, worked out
+ * once so they can be cached.
+ */
+public class EmissionRow
+{
+    /**
+     * Word id of the token, from TagModel.lookupWord
+     */
+    public final int word;
+    /**
+     * Tag ids the token may have, from TagModel.fillTags
+     */
+    public final int[] tags;
+    /**
+     * Log probability of each of tags, from TagModel.fillEmissions
+     */
+    public final float[] probs;
+
+    /**
+     * Look a token up in a model.
+     *
+     * @param model The model
+     * @param token The token's text, not lowercased
+     */
+    public EmissionRow(TagModel model, String token)
+    {
+	int     numtags = model.getTags().length;
+	int[]   t       = new int[numtags];
+	float[] e       = new float[numtags];
+
+	word = model.lookupWord(token.toLowerCase());
+	int n = model.fillTags(word, t, 0);
+	model.fillEmissions(word, e);
+
+	tags  = Arrays.copyOf(t, n);
+	probs = new float[n];
+	for(int i = 0; i < n; i++) {
+	    probs[i] = e[tags[i]];
+	}
+    }
+}
@@ -0,0 +1,141 @@
+package cs481.postag;
+
+import java.util.*;
+
+/**
+ * Log probabilities of tags given words, stored as sparse rows.
+ *
+ * Each known word id owns the slice [rowStart[w], rowStart[w+1]) of the
+ * parallel arrays rowTag and rowProb, sorted by tag id (compressed
+ * sparse rows).  Pairs that never occurred in training are absent and
+ * get whatever default the caller supplies.
+ */
+public class EmissionTable
+{
+    /**
+     * Start of each word's row; rowStart[numWords] is the number of entries
+     */
+    protected int[] rowStart;
+    /**
+     * Tag id of each entry
+     */
+    protected int[] rowTag;
+    /**
+     * Log probability of each entry
+     */
+    protected float[] rowProb;
+
+    /**
+     * Build the rows from (tag, word) pairs.
+     *
+     * @param numWords Number of word ids
+     * @param keys     Keys made by Vocabulary.pair(tag, word), in ascending order
+     * @param probs    Log probability for the key at the same index
+     */
+    public EmissionTable(int numWords, long[] keys, float[] probs)
+    {
+	rowStart = new int[numWords + 1];
+	rowTag   = new int[keys.length];
+	rowProb  = new float[keys.length];
+
+	//Count entries per word, then turn counts into offsets
+	for(int i = 0; i < keys.length; i++) {
+	    rowStart[Vocabulary.second(keys[i]) + 1]++;
+	}
+	for(int w = 0; w < numWords; w++) {
+	    rowStart[w + 1] += rowStart[w];
+	}
+
+	//Keys are sorted by tag, so each row comes out sorted by tag
+	int[] fill = Arrays.copyOf(rowStart, numWords);
+	for(int i = 0; i < keys.length; i++) {
+	    int w = Vocabulary.second(keys[i]);
+	    int p = fill[w]++;
+	    rowTag[p]  = Vocabulary.first(keys[i]);
+	    rowProb[p] = probs[i];
+	}
+    }
+
+    /**
+     * Wrap rows that were already built, e.g. read by ModelFile.
+     *
+     * @param rowStart Start of each word's row, plus the number of entries
+     * @param rowTag   Tag id of each entry
+     * @param rowProb  Log probability of each entry
+     */
+    public EmissionTable(int[] rowStart, int[] rowTag, float[] rowProb)
+    {
+	this.rowStart = rowStart;
+	this.rowTag   = rowTag;
+	this.rowProb  = rowProb;
+    }
+
+    /**
+     * Number of word ids.
+     *
+     * @return The number of rows
+     */
+    public int numWords()
+    {
+	return rowStart.length - 1;
+    }
+
+    /**
+     * Number of (tag, word) pairs stored.
+     *
+     * @return The number of entries in all rows
+     */
+    public int size()
+    {
+	return rowTag.length;
+    }
+
+    /**
+     * Get the log probability of a tag given a word.
+     *
+     * @param word    A known word id
+     * @param tag     A tag id
+     * @param missing Value to return if the pair never occurred
+     * @return The log probability
+     */
+    public float get(int word, int tag, float missing)
+    {
+	for(int p = rowStart[word]; p < rowStart[word + 1]; p++) {
+	    if(rowTag[p] == tag) {
+		return rowProb[p];
+	    }
+	}
+	return missing;
+    }
+
+    /**
+     * Write a word's whole row into a dense array indexed by tag id.
+     *
+     * @param word    A known word id
+     * @param out     Array of at least the number of tags
+     * @param numtags Number of tags to fill
+     * @param missing Value for tags that never occurred with the word
+     */
+    public void fill(int word, float[] out, int numtags, float missing)
+    {
+	Arrays.fill(out, 0, numtags, missing);
+	for(int p = rowStart[word]; p < rowStart[word + 1]; p++) {
+	    out[rowTag[p]] = rowProb[p];
+	}
+    }
+
+    /**
+     * Copy the tag ids in a word's row.
+     *
+     * @param word A known word id
+     * @param out  Where to put the tag ids
+     * @param off  Index in out of the first tag id
+     * @return The number of tag ids copied
+     */
+    public int tags(int word, int[] out, int off)
+    {
+	int n = rowStart[word + 1] - rowStart[word];
+	System.arraycopy(rowTag, rowStart[word], out, off, n);
+	return n;
+    }
+}
@@ -0,0 +1,74 @@
+package cs481.postag;
+
+import java.util.*;
+
+/**
+ * Expected counts gathered by the E-step of Baum-Welch over some
+ * untagged sentences.
+ *
+ * <pre>
+ * Typical use:
+ * ExpectedCounts c = new ExpectedCounts(numtags, emissions.size());
+ * c.logPaths += decoder.posteriors(model, words, len, gamma);
+ * decoder.addTransitions(model, len, c.tagTag);
+ * </pre>
+ *
+ * Counts from separate parts of the sentences can be merged.
+ */
+public class ExpectedCounts
+{
+    /**
+     * Expected count of each entry of the model's EmissionTable, i.e.
+     * of a known word with one of its tags
+     */
+    public double[] tagWord;
+    /**
+     * Expected count of each pair of tags, indexed by previous *
+     * number of tags + tag
+     */
+    public double[] tagTag;
+    /**
+     * Log of the summed probabilities of all paths through the
+     * sentences, with P(word | tag) / P(word) emissions; adding the
+     * log P(word) of every word gives their log likelihood
+     */
+    public double logPaths;
+
+    /**
+     * Make empty counts.
+     *
+     * @param numtags Number of tags
+     * @param entries Number of entries in the model's EmissionTable
+     */
+    public ExpectedCounts(int numtags, int entries)
+    {
+	tagWord = new double[entries];
+	tagTag  = new double[numtags * numtags];
+    }
+
+    /**
+     * Set every count back to 0.
+     */
+    public void clear()
+    {
+	Arrays.fill(tagWord, 0.0);
+	Arrays.fill(tagTag, 0.0);
+	logPaths = 0.0;
+    }
+
+    /**
+     * Add other's counts to these.
+     *
+     * @param other Counts made for the same model
+     */
+    public void merge(ExpectedCounts other)
+    {
+	for(int i = 0; i < tagWord.length; i++) {
+	    tagWord[i] += other.tagWord[i];
+	}
+	for(int i = 0; i < tagTag.length; i++) {
+	    tagTag[i] += other.tagTag[i];
+	}
+	logPaths += other.logPaths;
+    }
+}
@@ -0,0 +1,150 @@
+package cs481.postag;
+
+/**
+ * Frequency of frequency counts and the Good-Turing adjusted counts
+ * made from them.
+ *
+ * <pre>
+ * Typical use:
+ * GoodTuring gt = new GoodTuring(cTagWord);
+ * float[] rStar = gt.adjusted(false);
+ * p = rStar[count] / total;
+ * </pre>
+ *
+ * N(r), the number of pairs seen exactly r times, is kept in an array
+ * indexed by r, so the adjusted counts are found without any lookups
+ * by key.
+ */
+public class GoodTuring
+{
+    /**
+     * N(r) for each count r
+     */
+    protected IntCounts nr;
+
+    /**
+     * Make the histogram of a table of pair counts.
+     *
+     * @param c Occurrences of each pair
+     */
+    public GoodTuring(PairCounts c)
+    {
+	nr = new IntCounts();
+	long[] keys = c.keys();
+	for(int i = 0; i < keys.length; i++) {
+	    nr.inc(c.get(keys[i]));
+	}
+    }
+
+    /**
+     * Number of pairs seen exactly r times.
+     *
+     * @param r The count
+     * @return N(r)
+     */
+    public int get(int r)
+    {
+	return nr.get(r);
+    }
+
+    /**
+     * Adjusted count r* for each raw count r.  Plain Good-Turing uses
+     * r* = (r+1) N(r+1) / N(r), taking N(r+1) as 1 where no pair was
+     * seen r+1 times.  Simple Good-Turing (Gale and Sampson) replaces
+     * N by a line fitted to log N(r) against log r once that is no
+     * longer significantly different, which keeps r* smooth for large
+     * r where N(r) is mostly zeros.
+     *
+     * @param simple Whether to use Simple Good-Turing
+     * @return r* indexed by r; entries where N(r) = 0 are r itself
+     */
+    public float[] adjusted(boolean simple)
+    {
+	int     n     = nr.size();
+	float[] rStar = new float[n];
+	for(int r = 0; r < n; r++) {
+	    rStar[r] = r;
+	}
+	if(simple) {
+	    simple(rStar);
+	} else {
+	    for(int r = 1; r < n; r++) {
+		if(nr.get(r) > 0) {
+		    float next = (nr.get(r + 1) == 0) ? 1 : nr.get(r + 1);
+		    rStar[r] = ((r + 1) * next) / ((float)nr.get(r));
+		}
+	    }
+	}
+	return rStar;
+    }
+
+    /**
+     * Fill in Simple Good-Turing estimates.
+     *
+     * @param rStar Where to put r* for each r with N(r) &gt; 0
+     */
+    protected void simple(float[] rStar)
+    {
+	int n = nr.size();
+	int k = 0;
+	for(int r = 1; r < n; r++) {
+	    if(nr.get(r) > 0) {
+		k++;
+	    }
+	}
+	if(k == 0) {
+	    return;
+	}
+
+	//Average N(r) over the gap around each r seen, since most r
+	//have N(r) = 0, and fit log Z(r) = a + b log r
+	int[]    rs = new int[k];
+	double[] lr = new double[k];
+	double[] lz = new double[k];
+	for(int r = 1, j = 0; r < n; r++) {
+	    if(nr.get(r) > 0) {
+		rs[j++] = r;
+	    }
+	}
+	for(int j = 0; j < k; j++) {
+	    int q = (j == 0) ? 0 : rs[j - 1];
+	    int t = (j == k - 1) ? 2 * rs[j] - q : rs[j + 1];
+	    lr[j] = Math.log(rs[j]);
+	    lz[j] = Math.log(nr.get(rs[j]) / (0.5 * (t - q)));
+	}
+	double mx = 0, my = 0;
+	for(int j = 0; j < k; j++) {
+	    mx += lr[j];
+	    my += lz[j];
+	}
+	mx /= k;
+	my /= k;
+	double sxy = 0, sxx = 0;
+	for(int j = 0; j < k; j++) {
+	    sxy += (lr[j] - mx) * (lz[j] - my);
+	    sxx += (lr[j] - mx) * (lr[j] - mx);
+	}
+	double b = (sxx == 0) ? -1 : sxy / sxx;
+
+	//With S(r) = exp(a + b log r), (r+1) S(r+1) / S(r) needs only b.
+	//Use the raw estimate while it differs from the fitted one by
+	//more than 1.96 standard deviations, and the fitted one after.
+	boolean fitted = false;
+	for(int j = 0; j < k; j++) {
+	    int    r = rs[j];
+	    double y = (r + 1) * Math.pow(1.0 + 1.0 / r, b);
+	    double nr0 = nr.get(r);
+	    double nr1 = nr.get(r + 1);
+	    if(!fitted && nr1 > 0) {
+		double x  = (r + 1) * nr1 / nr0;
+		double sd = (r + 1) * Math.sqrt(nr1 / (nr0 * nr0) * (1 + nr1 / nr0));
+		if(Math.abs(x - y) > 1.96 * sd) {
+		    rStar[r] = (float)x;
+		    continue;
+		}
+	    }
+	    fitted   = true;
+	    rStar[r] = (float)y;
+	}
+    }
+}
@@ -0,0 +1,53 @@
+package cs481.postag;
+
+/**
+ * The estimates of POSTagGT: emissions from Good-Turing adjusted
+ * counts, with the mass of pairs seen once for pairs never seen, and
+ * add-one smoothed transitions.
+ */
+public class GoodTuringSmoothing extends AddOneSmoothing
+{
+    /**
+     * Whether to use Simple Good-Turing adjusted counts
+     */
+    protected boolean simple;
+
+    /**
+     * Make a Good-Turing estimator.
+     *
+     * @param simple Whether to use Simple Good-Turing; see GoodTuring.adjusted
+     */
+    public GoodTuringSmoothing(boolean simple)
+    {
+	this.simple = simple;
+    }
+
+    public String getName()
+    {
+	return simple ? "sgt" : "gt";
+    }
+
+    /**
+     * Unseen pairs get N(1) / number of (tag, word) pairs, with N(1)
+     * taken as 1 if no pair was seen once.
+     */
+    public float[] emissions(TrainingCounts counts, long[] keys, float[] missing)
+    {
+	GoodTuring g    = new GoodTuring(counts.cTagWord);
+	int        ones = g.get(1);
+	float      n1   = (ones == 0) ? 1 : ones;
+	missing[0] = (float) Math.log(n1/(float)counts.cTagWord.size());
+
+	//Adjusted counts depend only on the raw count, so find each once
+	float[] rStar = g.adjusted(simple);
+
+	float[] p = new float[keys.length];
+	for(int i = 0; i < keys.length; i++) {
+	    int count = counts.cTagWord.get(keys[i]);
+	    int total = counts.cWord.get(Vocabulary.second(keys[i]));
+
+	    p[i] = (float)Math.log(rStar[count]*((float)count) / ((float)total));
+	}
+	return p;
+    }
+}
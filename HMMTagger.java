@@ -0,0 +1,613 @@
+package cs481.postag;
+
+import cs481.token.*;
+import cs481.util.*;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.util.*;
+
+/**
+ * Determines the part of speech tags based on Viterbi, with
+ * probabilities estimated by a pluggable Smoothing.
+ *
+ * <pre>
+ * Typical use:
+ * HMMTagger pt = new HMMTagger(new KneserNeySmoothing(), "HMMTagger");
+ * pt.train(training);
+ * pt.tag(testing);
+ * </pre>
+ *
+ * POSTag, POSTagBigram and POSTagGT are this tagger with the
+ * smoothing each always had.  Counting, estimating the tables,
+ * decoding, saving and loading are the same whatever the smoothing.
+ *
+ * Run from the commandline like POSTag, optionally starting with
+ * -smoothing addone, gt, sgt, wb or kn (add-one is the default).  A
+ * saved model remembers its smoothing.
+ *
+ * @author Sterling Stuart Stein
+ * @author Shlomo Argamon
+ */
+public class HMMTagger implements Tagger
+{
+    /**
+     * Special start tag
+     */
+    public static String StartTag = "*START*";
+    
+    /**
+     * Small probability for when not found
+     */
+    public static float epsilon = -10000000f;
+    
+    /**
+     * How probabilities are estimated from counts
+     */
+    protected Smoothing smoothing;
+    /**
+     * Class name written to model files
+     */
+    protected String kind;
+    
+    /**
+     * The trained model, replaced whole by training, updating and loading
+     */
+    protected volatile ModelSnapshot model;
+    /**
+     * Counts of everything trained on so far; see counts()
+     */
+    protected TrainingCounts counts;
+    /**
+     * Counts section of the loaded model file, not yet parsed into
+     * counts, or null
+     */
+    protected ModelFile savedCounts;
+    
+    /**
+     * Beam width used when tagging, or 0 for exact Viterbi
+     */
+    protected int beam;
+    
+    /**
+     * Decoder of each thread calling tagSentence
+     */
+    protected ThreadLocal decoders;
+    /**
+     * What tagging has done so far
+     */
+    protected TaggerMetrics metrics;
+    
+    /**
+     * Make an untrained part of speech tagger with add-one smoothing.
+     */
+    public HMMTagger()
+    {
+	this(new AddOneSmoothing(), "HMMTagger");
+    }
+    
+    /**
+     * Make an untrained part of speech tagger.
+     *
+     * @param smoothing How to estimate probabilities
+     * @param kind      Class name to write to model files
+     */
+    public HMMTagger(Smoothing smoothing, String kind)
+    {
+	this.smoothing = smoothing;
+	this.kind      = kind;
+	metrics        = new TaggerMetrics();
+	decoders       = new ThreadLocal() {
+		protected Object initialValue() {
+		    return new ViterbiDecoder(HMMTagger.this.metrics);
+		}
+	    };
+    }
+    
+    /**
+     * The estimator with a name from Smoothing.getName.
+     *
+     * @param name addone, gt, sgt, wb or kn
+     * @return A new Smoothing, or null if the name is unknown
+     */
+    public static Smoothing smoothing(String name)
+    {
+	if(name.equals("addone")) {
+	    return new AddOneSmoothing();
+	} else if(name.equals("gt")) {
+	    return new GoodTuringSmoothing(false);
+	} else if(name.equals("sgt")) {
+	    return new GoodTuringSmoothing(true);
+	} else if(name.equals("wb")) {
+	    return new WittenBellSmoothing();
+	} else if(name.equals("kn")) {
+	    return new KneserNeySmoothing();
+	}
+	return null;
+    }
+    
+    public Smoothing getSmoothing()
+    {
+	return smoothing;
+    }
+    
+    /**
+     * Estimate with another smoothing from now on, re-estimating the
+     * model from the kept counts if trained.
+     *
+     * @param s The new smoothing
+     */
+    public synchronized void setSmoothing(Smoothing s)
+    {
+	smoothing = s;
+	if(counts() != null) {
+	    model = estimate(counts);
+	}
+    }
+    
+    /**
+     * Remove all training information.
+     */
+    public synchronized void clear()
+    {
+	model = null;
+	counts = null;
+	savedCounts = null;
+    }
+    
+    /**
+     * Train the part of speech tagger.
+     *
+     * @param training A vector of paragraphs which have tokens with the attribute &quot;pos&quot;.
+     */
+    public void train(Vector training)
+    {
+	train(training, 1);
+    }
+    
+    /**
+     * Train the part of speech tagger, counting on several threads.
+     *
+     * @param training A vector of paragraphs which have tokens with the attribute &quot;pos&quot;.
+     * @param threads  Number of threads to count with; the model is the same for any number
+     */
+    public synchronized void train(Vector training, int threads)
+    {
+	counts = tagged(TrainingCounts.count(training, threads));
+	savedCounts = null;
+	model = estimate(counts);
+    }
+    
+    /**
+     * Train the part of speech tagger on sentences read one at a time.
+     *
+     * @param sentences An Iterator over sentences of tokens with the attribute &quot;pos&quot;, e.g. a CorpusReader.
+     * @param threads   Number of threads to count with; the model is the same for any number
+     */
+    public synchronized void train(Iterator sentences, int threads)
+    {
+	counts = tagged(TrainingCounts.count(sentences, threads));
+	savedCounts = null;
+	model = estimate(counts);
+    }
+    
+    /**
+     * Add more training data to the model without recounting what it
+     * was trained on before.  The new counts are merged into the kept
+     * ones and the probabilities estimated again from them.
+     *
+     * @param training A vector of paragraphs which have tokens with the attribute &quot;pos&quot;.
+     * @param threads  Number of threads to count with
+     */
+    public synchronized void update(Vector training, int threads)
+    {
+	update(TrainingCounts.count(training, threads));
+    }
+    
+    /**
+     * Add more training data, read one sentence at a time, to the model.
+     *
+     * @param sentences An Iterator over sentences of tokens with the attribute &quot;pos&quot;, e.g. a CorpusReader.
+     * @param threads   Number of threads to count with
+     */
+    public synchronized void update(Iterator sentences, int threads)
+    {
+	update(TrainingCounts.count(sentences, threads));
+    }
+    
+    /**
+     * Re-estimate the trained model on untagged sentences by
+     * Baum-Welch; see BaumWelch.  The counts of the tagged data are
+     * kept as they were, so a later train or update starts again from
+     * them alone.  A second order model cannot be re-estimated.
+     *
+     * @param sentences  The untagged sentences, read once per iteration
+     * @param iterations Number of iterations
+     * @param threads    Number of threads to run the E-step on
+     * @param progress   Where to report each iteration's time and log likelihood, or null
+     * @throws IllegalStateException If the tagger is untrained or second order
+     */
+    public synchronized void trainEM(SentenceSource sentences, int iterations, int threads, PrintStream progress)
+    {
+	if(model == null) {
+	    throw new IllegalStateException(kind + " must be trained or loaded before EM");
+	}
+	if(model instanceof TrigramModel) {
+	    throw new IllegalStateException(kind + " is a second order model; EM only re-estimates first order ones");
+	}
+
+	BaumWelch bw = new BaumWelch(model, sentences, threads);
+	try {
+	    for(int i = 1; i <= iterations; i++) {
+		model = bw.iterate();
+		if(progress != null) {
+		    double ll = bw.getLogLikelihood();
+		    progress.println("EM iteration " + i + ": " + (bw.getNanos() / 1000000) + " ms, log likelihood " +
+				     (float)ll + " (" + (float)(ll / Math.max(1, bw.getTokens())) + " per token)");
+		}
+	    }
+	} finally {
+	    bw.close();
+	}
+    }
+    
+    /**
+     * Merge counts of new training data into the kept counts and
+     * estimate again.  An untrained tagger is simply trained on them.
+     *
+     * @param more Counts of the new training data
+     */
+    protected synchronized void update(TrainingCounts more)
+    {
+	if(counts() == null) {
+	    counts = tagged(more);
+	} else {
+	    //The published model keeps the vocabularies it was built with
+	    counts.tagVocab  = new Vocabulary(counts.tagVocab);
+	    counts.wordVocab = new Vocabulary(counts.wordVocab);
+	    counts.merge(more);
+	}
+	model = estimate(counts);
+    }
+    
+    /**
+     * The counts of everything trained on so far, first parsing those
+     * of a loaded model if they haven't been.
+     *
+     * @return The counts, or null if untrained
+     */
+    protected synchronized TrainingCounts counts()
+    {
+	if(savedCounts != null) {
+	    try {
+		counts = savedCounts.readCounts(model.tagVocab, model.wordVocab);
+	    } catch(IOException e) {
+		throw new UncheckedIOException(e);
+	    }
+	    savedCounts = null;
+	}
+	return counts;
+    }
+    
+    /**
+     * Check that counts to train on are not empty, as they are when the
+     * corpus was in a layout the reader did not recognize.
+     *
+     * @param c The counts
+     * @return c
+     * @throws IllegalArgumentException If no sentence or token was counted
+     */
+    protected TrainingCounts tagged(TrainingCounts c)
+    {
+	if(c.cTokens == 0 || c.cTag.get(c.startTag) == 0) {
+	    throw new IllegalArgumentException("No tagged sentences to train on");
+	}
+	return c;
+    }
+    
+    /**
+     * Find probabilities from word and tag counts.
+     *
+     * @param counts Counts of the training corpus
+     * @return The model, not yet published
+     */
+    protected ModelSnapshot estimate(TrainingCounts counts)
+    {
+	int        cTokens  = counts.cTokens;
+	IntCounts  cTag     = counts.cTag;
+	PairCounts cTagWord = counts.cTagWord;
+	
+	Vocabulary tagVocab  = counts.tagVocab;
+	Vocabulary wordVocab = counts.wordVocab;
+	
+	//Make list of all possible tags
+	String[] tags = tagVocab.toArray();
+	
+	//Find probabilities from counts
+	float[] pTag = new float[tags.length];
+	for(int t = 0; t < tags.length; t++) {
+	    pTag[t] = (float)Math.log(((float)cTag.get(t)) / (float)cTokens);
+	}
+	
+	long[]        twkeys   = cTagWord.keys();
+	float[]       missing  = new float[1];
+	EmissionTable pTagWord = new EmissionTable(wordVocab.size(), twkeys,
+						   smoothing.emissions(counts, twkeys, missing));
+	float[]       pTagTag  = smoothing.transitions(counts);
+	
+	//The probability for a known word with a tag it was never seen
+	//with is computed once here so tagging only reads the model
+	return new ModelSnapshot(tagVocab, counts.startTag, wordVocab, pTag, pTagWord, pTagTag,
+				 counts.openTags(), new SuffixModel(counts),
+				 missing[0], beam);
+    }
+    
+    public String[] getTags() {
+	return model.getTags();
+    }
+    
+    public int getStartTag() {
+	return model.getStartTag();
+    }
+    
+    public float[] getTransitions() {
+	return model.getTransitions();
+    }
+    
+    public EmissionCache getEmissionCache() {
+	return model.getEmissionCache();
+    }
+    
+    public int getBeam() {
+	return beam;
+    }
+    
+    /**
+     * The model in use now; tagging reads it once per sentence.
+     *
+     * @return The current model, or null if untrained
+     */
+    public TagModel getSnapshot() {
+	return model;
+    }
+    
+    /**
+     * Decode keeping only the best width tags (tag pairs for a trigram
+     * model) at each word, which is faster but may miss the most
+     * probable tags.
+     *
+     * @param width Beam width, or 0 for exact Viterbi
+     */
+    public synchronized void setBeam(int width) {
+	beam = width;
+	if (model != null) {
+	    model = model.withBeam(width);
+	}
+    }
+    
+    public int lookupWord(String word) {
+	return model.lookupWord(word);
+    }
+    
+    public void fillEmissions(int word, float[] out) {
+	model.fillEmissions(word, out);
+    }
+    
+    public int fillTags(int word, int[] out, int off) {
+	return model.fillTags(word, out, off);
+    }
+    
+    /**
+     * Tags a sentence by setting the &quot;pos&quot; attribute in the Tokens.
+     *
+     * @param sent The sentence to be tagged.
+     */
+    public void tagSentence(Vector sent) {
+	if (sent.size() == 0) {
+	    return;
+	}
+	
+	((ViterbiDecoder)decoders.get()).tagSentence(model, sent);
+    }
+    
+    /**
+     * Tags a sentence by setting the &quot;pos&quot; attribute in the
+     * Tokens, and finds the posterior probability of each tag by
+     * forward-backward.  This costs about twice as much as tagSentence.
+     *
+     * @param sent The sentence to be tagged.
+     * @return P(tag | sentence) of the tag given to each word
+     */
+    public float[] tagConfidence(Vector sent) {
+	return ((ViterbiDecoder)decoders.get()).tagSentenceConfidence(model, sent);
+    }
+
+    /**
+     * Finds the k most probable ways of tagging a sentence by list
+     * Viterbi, which costs about k times as much as tagSentence.  No
+     * attribute is set.
+     *
+     * @param sent The sentence
+     * @param k    Most sequences to find, at most ViterbiDecoder.maxKBest
+     * @return The sequences, best first
+     */
+    public TagSequence[] tagKBest(Vector sent, int k) {
+	return ((ViterbiDecoder)decoders.get()).tagSentenceKBest(model, sent, k);
+    }
+    
+    /**
+     * Counts of sentences and tokens tagged, unknown words and latency,
+     * shared by every way of tagging with this tagger.
+     *
+     * @return The live metrics
+     */
+    public TaggerMetrics getMetrics() {
+	return metrics;
+    }
+    
+    /**
+     * Tags a Vector of paragraphs by setting the &quot;pos&quot; attribute in the Tokens.
+     *
+     * @param testing The paragraphs to be tagged.
+     */
+    public void tag(Vector testing) {
+	Vector sents = new Vector();
+	for(Iterator i = testing.iterator(); i.hasNext();) {
+	    sents.addAll((Vector)i.next());
+	}
+	tagSentences((Vector[])sents.toArray(new Vector[0]));
+    }
+    
+    /**
+     * Tags many sentences at once by setting the &quot;pos&quot; attribute
+     * in the Tokens, decoding them in batches for throughput rather
+     * than latency.  All of them are tagged with the same model.
+     *
+     * @param sents The sentences to be tagged.
+     */
+    public void tagSentences(Vector[] sents) {
+	((ViterbiDecoder)decoders.get()).tagSentences(model, sents, 0, sents.length);
+    }
+    
+    /**
+     * Tags a Vector of paragraphs using several threads.
+     *
+     * @param testing The paragraphs to be tagged.
+     * @param threads Number of threads; 1 tags on the calling thread
+     */
+    public void tag(Vector testing, int threads) {
+	if (threads <= 1) {
+	    tag(testing);
+	    return;
+	}
+	
+	ParallelTagger par = new ParallelTagger(threads, metrics);
+	try {
+	    par.tag(this, testing);
+	} finally {
+	    par.shutdown();
+	}
+    }
+    
+    /**
+     * Tags sentences as they are read and writes each one as soon as it
+     * is tagged, in input order.  Closes in and out.
+     *
+     * @param in      Untagged sentences
+     * @param out     Where the tagged sentences go
+     * @param threads Number of tagging threads
+     * @return The number of sentences tagged
+     */
+    public int tag(CorpusReader in, CorpusWriter out, int threads) throws IOException {
+	return new TaggingPipeline(this, threads, metrics).run(in, out);
+    }
+    
+    /**
+     * Write the trained model to a file that load can read back.
+     *
+     * @param fname Name of the model file
+     */
+    public synchronized void save(String fname) throws IOException {
+	ModelFile out = ModelFile.create(fname, kind);
+	try {
+	    out.writeString(smoothing.getName());
+	    writeModel(out, model);
+	    out.writeCounts(counts());
+	} finally {
+	    out.close();
+	}
+    }
+    
+    /**
+     * Write the model's sections, which save puts between the smoothing
+     * name and the training counts.
+     *
+     * @param out The model file being written
+     * @param m   The model to write
+     */
+    protected void writeModel(ModelFile out, ModelSnapshot m) throws IOException {
+	out.writeStrings(m.tags);
+	out.writeInt(m.startTag);
+	out.writeStrings(m.wordVocab.toArray());
+	out.writeFloats(m.pTag);
+	out.writeEmissions(m.pTagWord);
+	out.writeFloats(m.pTagTag);
+	out.writeInts(m.openTags);
+	out.writeSuffixes(m.suffixes);
+	out.writeFloat(m.missing);
+    }
+    
+    /**
+     * Replace all training information with a model written by save.
+     * Nothing is replaced unless the whole file is read.  The model's
+     * vocabularies are hashed as they are read, so loading takes time
+     * in proportion to them; the training counts are only copied, and
+     * parsed the first time update, save or setSmoothing needs them.
+     *
+     * @param fname Name of the model file
+     * @throws IOException If the file can't be read or is truncated
+     */
+    public synchronized void load(String fname) throws IOException {
+	ModelFile in = ModelFile.open(fname, kind);
+	try {
+	    String    name = in.readString();
+	    Smoothing s    = smoothing(name);
+	    if(s == null) {
+		throw new IOException("Unknown smoothing " + name);
+	    }
+	    ModelSnapshot m = readModel(in);
+	    ModelFile     c = in.readCountsLater();
+
+	    smoothing   = s;
+	    counts      = null;
+	    savedCounts = c;
+	    model       = m;
+	} catch(BufferUnderflowException e) {
+	    throw new IOException(fname + " is truncated");
+	} finally {
+	    in.close();
+	}
+    }
+    
+    /**
+     * Read the sections written by writeModel.
+     *
+     * @param in The model file being read
+     * @return The model, not yet published
+     */
+    protected ModelSnapshot readModel(ModelFile in) throws IOException {
+	Vocabulary    tagVocab  = in.readVocabulary();
+	int           startTag  = in.readInt();
+	Vocabulary    wordVocab = in.readVocabulary();
+	float[]       pTag      = in.readFloats();
+	EmissionTable pTagWord  = in.readEmissions();
+	float[]       pTagTag   = in.readFloats();
+	int[]         openTags  = in.readInts();
+	SuffixModel   suffixes  = in.readSuffixes();
+	float         missing   = in.readFloat();
+	return new ModelSnapshot(tagVocab, startTag, wordVocab, pTag, pTagWord, pTagTag,
+				 openTags, suffixes, missing, beam);
+    }
+    
+    /**
+     * Train on             the 1st XML file,
+     * tag                  the 2nd XML file,
+     * write the results in the 3rd XML file.
+     *
+     * @param argv [-smoothing name], then options and XML file names; see TaggerMain.
+     */
+    public static void main(String[] argv) throws Exception
+    {
+	HMMTagger pt = new HMMTagger();
+	int       a  = 0;
+	if(argv.length >= 2 && argv[0].equals("-smoothing")) {
+	    pt.smoothing = smoothing(argv[1]);
+	    if(pt.smoothing == null) {
+		System.err.println("Unknown smoothing " + argv[1] + "; use addone, gt, sgt, wb or kn.");
+		System.exit(1);
+	    }
+	    a = 2;
+	}
+	TaggerMain.run(pt, "HMMTagger", Arrays.copyOfRange(argv, a, argv.length));
+    }
+}
@@ -0,0 +1,87 @@
+package cs481.postag;
+
+import java.util.*;
+
+/**
+ * Counts indexed by a dense id, such as a word or tag id from a Vocabulary.
+ *
+ * The array grows as larger ids are seen, so ids never need to be
+ * known in advance.
+ */
+public class IntCounts
+{
+    /**
+     * Count for each id
+     */
+    protected int[] counts;
+    /**
+     * One more than the largest id incremented
+     */
+    protected int size;
+
+    /**
+     * Make an empty table.
+     */
+    public IntCounts()
+    {
+	counts = new int[16];
+	size   = 0;
+    }
+
+    /**
+     * Remove all counts.
+     */
+    public void clear()
+    {
+	Arrays.fill(counts, 0, size, 0);
+	size = 0;
+    }
+
+    /**
+     * Increment the count for id.
+     *
+     * @param id The id of the field to increment
+     */
+    public void inc(int id)
+    {
+	add(id, 1);
+    }
+
+    /**
+     * Add to the count for id.
+     *
+     * @param id The id of the field to change
+     * @param n  The amount to add
+     */
+    public void add(int id, int n)
+    {
+	if(id >= counts.length) {
+	    counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+	}
+	if(id >= size) {
+	    size = id + 1;
+	}
+	counts[id] += n;
+    }
+
+    /**
+     * Get the count for id.
+     *
+     * @param id The id to look up
+     * @return The count, or 0 if never incremented
+     */
+    public int get(int id)
+    {
+	return (id < size) ? counts[id] : 0;
+    }
+
+    /**
+     * One more than the largest id incremented.
+     *
+     * @return The number of fields in use
+     */
+    public int size()
+    {
+	return size;
+    }
+}
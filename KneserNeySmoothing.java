@@ -0,0 +1,97 @@
+package cs481.postag;
+
+/**
+ * Interpolated Kneser-Ney smoothing: a fixed discount D is taken from
+ * every count seen and given to a continuation distribution, in which
+ * an outcome is as likely as the number of different conditions it
+ * was seen after.
+ *
+ * For a condition seen N times with T different outcomes,
+ * P(x) = max(c(x) - D, 0) / N + (D T / N) Pcont(x), where
+ * D = N(1) / (N(1) + 2 N(2)) from the frequency of frequency counts.
+ */
+public class KneserNeySmoothing implements Smoothing
+{
+    /**
+     * Discount used when there are no counts of 1 or of 2 to find it from
+     */
+    public static double defaultDiscount = 0.75;
+
+    public String getName()
+    {
+	return "kn";
+    }
+
+    /**
+     * The discount for a table of counts.
+     *
+     * @param c The counts
+     * @return D, between 0 and 1
+     */
+    protected double discount(PairCounts c)
+    {
+	GoodTuring g  = new GoodTuring(c);
+	double     n1 = g.get(1);
+	double     n2 = g.get(2);
+	if(n1 == 0 || n2 == 0) {
+	    return defaultDiscount;
+	}
+	return n1 / (n1 + 2 * n2);
+    }
+
+    /**
+     * Unseen pairs get the backoff weight of the whole corpus,
+     * D types / tokens, spread over all tags, since one value stands
+     * for every word.
+     */
+    public float[] emissions(TrainingCounts counts, long[] keys, float[] missing)
+    {
+	double d     = discount(counts.cTagWord);
+	int[]  types = counts.cTagWord.secondTypes(counts.wordVocab.size());
+	int[]  words = counts.cTagWord.firstTypes(counts.tagVocab.size());
+	double pairs = counts.cTagWord.size();
+	missing[0] = (float)Math.log(d * pairs / counts.cTokens / counts.tagVocab.size());
+
+	float[] p = new float[keys.length];
+	for(int i = 0; i < keys.length; i++) {
+	    int    t     = Vocabulary.first(keys[i]);
+	    int    w     = Vocabulary.second(keys[i]);
+	    double total = counts.cWord.get(w);
+	    double x     = Math.max(counts.cTagWord.get(keys[i]) - d, 0) / total +
+		d * types[w] / total * words[t] / pairs;
+
+	    p[i] = (x > 0) ? (float)Math.log(x) : HMMTagger.epsilon;
+	}
+	return p;
+    }
+
+    public float[] transitions(TrainingCounts counts)
+    {
+	int    numtags = counts.tagVocab.size();
+	double d       = discount(counts.cTagTag);
+	int[]  types   = counts.cTagTag.firstTypes(numtags);
+	int[]  totals  = counts.cTagTag.firstTotals(numtags);
+	int[]  before  = counts.cTagTag.secondTypes(numtags);
+	double pairs   = counts.cTagTag.size();
+
+	double[] p = new double[numtags * numtags];
+	for(int t1 = 0; t1 < numtags; t1++) {
+	    double backoff = (totals[t1] == 0) ? 1 : d * types[t1] / totals[t1];
+	    for(int t2 = 0; t2 < numtags; t2++) {
+		p[t1 * numtags + t2] = (pairs == 0) ? 0 : backoff * before[t2] / pairs;
+	    }
+	}
+	long[] ttkeys = counts.cTagTag.keys();
+	for(int i = 0; i < ttkeys.length; i++) {
+	    int t1 = Vocabulary.first(ttkeys[i]);
+	    p[t1 * numtags + Vocabulary.second(ttkeys[i])] +=
+		Math.max(counts.cTagTag.get(ttkeys[i]) - d, 0) / totals[t1];
+	}
+
+	float[] pTagTag = new float[p.length];
+	for(int i = 0; i < p.length; i++) {
+	    pTagTag[i] = (p[i] > 0) ? (float)Math.log(p[i]) : HMMTagger.epsilon;
+	}
+	return pTagTag;
+    }
+}
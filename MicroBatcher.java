@@ -0,0 +1,261 @@
+package cs481.postag;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Collects sentences from many callers into batches and tags each
+ * batch at once, so that a sentence at a time does not pay a whole
+ * call's overhead.
+ *
+ * <pre>
+ * Typical use:
+ * MicroBatcher mb = new MicroBatcher(pt, 64, 500, 4);
+ * CompletableFuture f = mb.submit(sent);
+ * ...
+ * f.join();
+ * mb.close();
+ * </pre>
+ *
+ * A batch is closed when it holds maxBatch sentences, or when the
+ * window has passed since its first sentence was submitted, whichever
+ * comes first.  It is then tagged with Tagger.tagSentences on one of a
+ * fixed number of workers, each using its own decoder, and the future
+ * of every sentence in it is completed with that sentence.
+ *
+ * A new batch is only started once a worker is free, so while every
+ * worker is busy sentences wait in the queue and the next batch is
+ * larger; when the load is light batches stay small and a sentence
+ * waits at most about one window.
+ */
+public class MicroBatcher
+{
+    /**
+     * Window used by TaggerServer if not given, in microseconds
+     */
+    public static long defaultWindowMicros = 500;
+
+    /**
+     * The tagger the batches are tagged with
+     */
+    protected Tagger          tagger;
+    /**
+     * Largest number of sentences in a batch
+     */
+    protected int             maxBatch;
+    /**
+     * Longest a batch waits for more sentences, in nanoseconds
+     */
+    protected long            windowNanos;
+    /**
+     * Sentences submitted but not yet in a batch
+     */
+    protected BlockingQueue   queue;
+    /**
+     * Threads the batches are tagged on
+     */
+    protected ExecutorService workers;
+    /**
+     * One permit per worker that is not tagging a batch
+     */
+    protected Semaphore       idle;
+    /**
+     * Thread that makes batches out of the queue
+     */
+    protected Thread          collector;
+    /**
+     * Where batches and latencies are recorded
+     */
+    protected BatchMetrics    metrics;
+    /**
+     * Set once close is called
+     */
+    protected boolean         closed;
+
+    /**
+     * Put on the queue by close, after the last real request
+     */
+    protected static final Request END = new Request(null);
+
+    /**
+     * One submitted sentence.
+     */
+    protected static class Request
+    {
+	protected Vector            sent;
+	protected CompletableFuture done;
+	protected long              submitted;
+
+	protected Request(Vector sent)
+	{
+	    this.sent = sent;
+	    done      = new CompletableFuture();
+	    submitted = System.nanoTime();
+	}
+    }
+
+    /**
+     * Start batching for a tagger.
+     *
+     * @param tagger       The tagger, which may be retrained or reloaded meanwhile
+     * @param maxBatch     Largest number of sentences in a batch
+     * @param windowMicros Longest a batch waits for more sentences, in microseconds
+     * @param threads      Number of worker threads
+     */
+    public MicroBatcher(Tagger tagger, int maxBatch, long windowMicros, int threads)
+    {
+	if(maxBatch < 1 || windowMicros < 0 || threads < 1) {
+	    throw new IllegalArgumentException("maxBatch and threads must be positive and the window not negative");
+	}
+	this.tagger   = tagger;
+	this.maxBatch = maxBatch;
+	windowNanos   = windowMicros * 1000;
+	queue         = new LinkedBlockingQueue();
+	workers       = Executors.newFixedThreadPool(threads);
+	idle          = new Semaphore(threads);
+	metrics       = new BatchMetrics();
+	collector     = new Thread("MicroBatcher") {
+		public void run() {
+		    collect();
+		}
+	    };
+	collector.setDaemon(true);
+	collector.start();
+    }
+
+    /**
+     * Queue a sentence to be tagged.  The caller must not touch it
+     * until the future is complete.
+     *
+     * @param sent The sentence
+     * @return A future completed with sent once its tokens have the
+     *         &quot;pos&quot; attribute, or exceptionally if tagging failed
+     * @throws IllegalStateException If close has been called
+     */
+    public synchronized CompletableFuture submit(Vector sent)
+    {
+	if(closed) {
+	    throw new IllegalStateException("MicroBatcher is closed");
+	}
+	Request r = new Request(sent);
+	queue.add(r);
+	return r.done;
+    }
+
+    /**
+     * Number of sentences waiting for a batch.
+     *
+     * @return The queue length
+     */
+    public int getQueueDepth()
+    {
+	return queue.size();
+    }
+
+    public BatchMetrics getMetrics()
+    {
+	return metrics;
+    }
+
+    /**
+     * Tag whatever has been submitted and stop the threads.  Returns
+     * once every future is complete.
+     */
+    public void close() throws InterruptedException
+    {
+	synchronized(this) {
+	    if(closed) {
+		return;
+	    }
+	    closed = true;
+	    queue.add(END);
+	}
+	collector.join();
+	workers.shutdown();
+	workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Make batches until END is taken off the queue.
+     */
+    protected void collect()
+    {
+	try {
+	    boolean more = true;
+	    while(more) {
+		//Wait for a free worker before starting, so the queue
+		//builds up into a bigger batch meanwhile
+		idle.acquire();
+		Request first = (Request)queue.take();
+		if(first == END) {
+		    break;
+		}
+		Vector batch    = new Vector();
+		long   deadline = first.submitted + windowNanos;
+		batch.add(first);
+		while(batch.size() < maxBatch) {
+		    Request r = (Request)queue.poll();
+		    if(r == null) {
+			long wait = deadline - System.nanoTime();
+			if(wait <= 0) {
+			    break;
+			}
+			r = (Request)queue.poll(wait, TimeUnit.NANOSECONDS);
+			if(r == null) {
+			    break;
+			}
+		    }
+		    if(r == END) {
+			more = false;
+			break;
+		    }
+		    batch.add(r);
+		}
+		metrics.recordBatch(batch.size(), queue.size());
+		dispatch(batch);
+	    }
+	} catch(InterruptedException e) {
+	    //Nothing interrupts the collector; leave if something does
+	}
+    }
+
+    /**
+     * Tag a batch on a worker and complete its futures.  The worker
+     * permit taken by collect is given back when done.
+     *
+     * @param batch The Requests to tag
+     */
+    protected void dispatch(final Vector batch)
+    {
+	workers.execute(new Runnable() {
+		public void run() {
+		    try {
+			Vector[] sents = new Vector[batch.size()];
+			for(int i = 0; i < sents.length; i++) {
+			    sents[i] = ((Request)batch.get(i)).sent;
+			}
+			try {
+			    tagger.tagSentences(sents);
+			} catch(Throwable e) {
+			    //Fail the batch's callers rather than leave them waiting
+			    for(int i = 0; i < batch.size(); i++) {
+				((Request)batch.get(i)).done.completeExceptionally(e);
+			    }
+			    if(e instanceof Error) {
+				throw (Error)e;
+			    }
+			    return;
+			}
+			long now = System.nanoTime();
+			for(int i = 0; i < batch.size(); i++) {
+			    Request r = (Request)batch.get(i);
+			    metrics.recordLatency(now - r.submitted);
+			    r.done.complete(r.sent);
+			}
+		    } finally {
+			idle.release();
+		    }
+		}
+	    });
+    }
+}
@@ -0,0 +1,466 @@
+package cs481.postag;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * Reads and writes trained models in a compact binary format.
+ *
+ * <pre>
+ * Typical use:
+ * ModelFile out = ModelFile.create("pos.model", "POSTag");
+ * out.writeStrings(tags);
+ * out.writeFloats(pTag);
+ * out.close();
+ *
+ * ModelFile in = ModelFile.open("pos.model", "POSTag");
+ * tags = in.readStrings();
+ * pTag = in.readFloats();
+ * in.close();
+ * </pre>
+ *
+ * A file is a header (magic number, version, tagger class name)
+ * followed by whatever sections the tagger writes, each prefixed by
+ * its length.  Files are read through a read-only memory mapping, so
+ * numeric sections are bulk copied straight out of the page cache.
+ * A length that would run past the end of the file is an IOException,
+ * so a damaged file can't make a reader allocate a huge array.
+ */
+public class ModelFile
+{
+    /**
+     * First 4 bytes of every model file ("POSM")
+     */
+    public static final int MAGIC   = 0x504F534D;
+    /**
+     * Format version written by this class
+     */
+    public static final int VERSION = 7;
+
+    /**
+     * Where sections are written, or null if reading
+     */
+    protected DataOutputStream out;
+    /**
+     * Where sections are read from, or null if writing
+     */
+    protected ByteBuffer in;
+    /**
+     * File kept open while reading
+     */
+    protected RandomAccessFile file;
+    /**
+     * Class name of the tagger that wrote the file being read
+     */
+    protected String kind;
+    /**
+     * Name of the file being read, for messages
+     */
+    protected String fname;
+
+    protected ModelFile()
+    {
+    }
+
+    /**
+     * Start writing a model file.
+     *
+     * @param fname Name of the file to write
+     * @param kind  Class name of the tagger writing it
+     * @return A ModelFile to write sections to
+     */
+    public static ModelFile create(String fname, String kind) throws IOException
+    {
+	ModelFile mf = new ModelFile();
+	mf.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+	mf.out.writeInt(MAGIC);
+	mf.out.writeInt(VERSION);
+	mf.writeString(kind);
+	return mf;
+    }
+
+    /**
+     * Map a model file for reading.
+     *
+     * @param fname Name of the file to read
+     * @param kind  Class name of the tagger reading it, or null for any
+     * @return A ModelFile to read sections from
+     * @throws IOException If the file is not a model written by kind
+     */
+    public static ModelFile open(String fname, String kind) throws IOException
+    {
+	ModelFile mf = new ModelFile();
+	mf.fname = fname;
+	mf.file  = new RandomAccessFile(fname, "r");
+	FileChannel ch = mf.file.getChannel();
+	mf.in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+
+	try {
+	    if(mf.in.getInt() != MAGIC) {
+		throw new IOException(fname + " is not a model file");
+	    }
+	    int version = mf.in.getInt();
+	    if(version != VERSION) {
+		throw new IOException(fname + " has unsupported version " + version);
+	    }
+	    String found = mf.readString();
+	    mf.kind = found;
+	    if(kind != null && !found.equals(kind)) {
+		throw new IOException(fname + " holds a " + found + " model, not " + kind);
+	    }
+	} catch(BufferUnderflowException e) {
+	    mf.close();
+	    throw new IOException(fname + " is truncated");
+	} catch(IOException e) {
+	    mf.close();
+	    throw e;
+	}
+	return mf;
+    }
+
+    /**
+     * Class name of the tagger that wrote a model file.
+     *
+     * @param fname Name of the file
+     * @return The name, e.g. &quot;POSTagGT&quot;
+     */
+    public static String kind(String fname) throws IOException
+    {
+	ModelFile mf = open(fname, null);
+	try {
+	    return mf.kind;
+	} finally {
+	    mf.close();
+	}
+    }
+
+    /**
+     * Finish writing, or release the file after reading.
+     */
+    public void close() throws IOException
+    {
+	if(out != null) {
+	    out.close();
+	}
+	if(file != null) {
+	    file.close();
+	}
+    }
+
+    public void writeInt(int x) throws IOException
+    {
+	out.writeInt(x);
+    }
+
+    public void writeFloat(float x) throws IOException
+    {
+	out.writeFloat(x);
+    }
+
+    public void writeString(String s) throws IOException
+    {
+	byte[] b = s.getBytes(StandardCharsets.UTF_8);
+	out.writeInt(b.length);
+	out.write(b);
+    }
+
+    public void writeStrings(String[] a) throws IOException
+    {
+	out.writeInt(a.length);
+	for(int i = 0; i < a.length; i++) {
+	    writeString(a[i]);
+	}
+    }
+
+    public void writeInts(int[] a) throws IOException
+    {
+	out.writeInt(a.length);
+	for(int i = 0; i < a.length; i++) {
+	    out.writeInt(a[i]);
+	}
+    }
+
+    public void writeFloats(float[] a) throws IOException
+    {
+	out.writeInt(a.length);
+	for(int i = 0; i < a.length; i++) {
+	    out.writeFloat(a[i]);
+	}
+    }
+
+    public void writeLongs(long[] a) throws IOException
+    {
+	out.writeInt(a.length);
+	for(int i = 0; i < a.length; i++) {
+	    out.writeLong(a[i]);
+	}
+    }
+
+    /**
+     * Write the raw counts a model was estimated from, so it can be
+     * updated after it is loaded.  The vocabularies are not written.
+     *
+     * @param c The counts to write
+     */
+    public void writeCounts(TrainingCounts c) throws IOException
+    {
+	int[] word = new int[c.cWord.size()];
+	for(int i = 0; i < word.length; i++) {
+	    word[i] = c.cWord.get(i);
+	}
+	int[] tag = new int[c.cTag.size()];
+	for(int i = 0; i < tag.length; i++) {
+	    tag[i] = c.cTag.get(i);
+	}
+	writeInt(c.cTokens);
+	writeInts(word);
+	writeInts(tag);
+	writePairCounts(c.cTagWord);
+	writePairCounts(c.cTagTag);
+	writePairCounts(c.cTagTagTag);
+    }
+
+    protected void writePairCounts(PairCounts p) throws IOException
+    {
+	long[] keys = p.keys();
+	int[]  n    = new int[keys.length];
+	for(int i = 0; i < keys.length; i++) {
+	    n[i] = p.get(keys[i]);
+	}
+	writeLongs(keys);
+	writeInts(n);
+    }
+
+    /**
+     * Write the rows of an EmissionTable.
+     *
+     * @param e The table to write
+     */
+    public void writeEmissions(EmissionTable e) throws IOException
+    {
+	writeInts(e.rowStart);
+	writeInts(e.rowTag);
+	writeFloats(e.rowProb);
+    }
+
+    /**
+     * Write a SuffixModel.
+     *
+     * @param s The suffix trie to write
+     */
+    public void writeSuffixes(SuffixModel s) throws IOException
+    {
+	int[] chars = new int[s.nodeChar.length];
+	for(int i = 0; i < chars.length; i++) {
+	    chars[i] = s.nodeChar[i];
+	}
+	writeInts(s.firstChild);
+	writeInts(chars);
+	writeInts(s.parent);
+	writeEmissions(s.probs);
+	writeFloat(s.theta);
+	writeInt(s.maxLength);
+	writeInt(s.maxFrequency);
+    }
+
+    public int readInt() throws IOException
+    {
+	return in.getInt();
+    }
+
+    public float readFloat() throws IOException
+    {
+	return in.getFloat();
+    }
+
+    /**
+     * Read the length of a section.
+     *
+     * @param width Number of bytes each element takes, at least
+     * @return The number of elements
+     * @throws IOException If that many elements can't fit in the rest of the file
+     */
+    protected int readLength(int width) throws IOException
+    {
+	int n = in.getInt();
+	if(n < 0) {
+	    throw new IOException(fname + " is corrupt");
+	}
+	if((long)n * width > in.remaining()) {
+	    throw new IOException(fname + " is truncated");
+	}
+	return n;
+    }
+
+    /**
+     * Step over a section of fixed width elements.
+     *
+     * @param width Number of bytes each element takes
+     */
+    protected void skip(int width) throws IOException
+    {
+	int n = readLength(width);
+	in.position(in.position() + n * width);
+    }
+
+    public String readString() throws IOException
+    {
+	byte[] b = new byte[readLength(1)];
+	in.get(b);
+	return new String(b, StandardCharsets.UTF_8);
+    }
+
+    public String[] readStrings() throws IOException
+    {
+	//Each string has at least its own length
+	String[] a = new String[readLength(4)];
+	for(int i = 0; i < a.length; i++) {
+	    a[i] = readString();
+	}
+	return a;
+    }
+
+    public int[] readInts() throws IOException
+    {
+	int[] a = new int[readLength(4)];
+	in.asIntBuffer().get(a);
+	in.position(in.position() + 4 * a.length);
+	return a;
+    }
+
+    public float[] readFloats() throws IOException
+    {
+	float[] a = new float[readLength(4)];
+	in.asFloatBuffer().get(a);
+	in.position(in.position() + 4 * a.length);
+	return a;
+    }
+
+    public long[] readLongs() throws IOException
+    {
+	long[] a = new long[readLength(8)];
+	in.asLongBuffer().get(a);
+	in.position(in.position() + 8 * a.length);
+	return a;
+    }
+
+    /**
+     * Read counts written by writeCounts.
+     *
+     * @param tagVocab  The tag ids the counts use
+     * @param wordVocab The word ids the counts use
+     * @return The counts, sharing the given vocabularies
+     */
+    public TrainingCounts readCounts(Vocabulary tagVocab, Vocabulary wordVocab) throws IOException
+    {
+	TrainingCounts c = new TrainingCounts();
+	c.tagVocab  = tagVocab;
+	c.wordVocab = wordVocab;
+	c.startTag  = tagVocab.lookup(POSTag.StartTag);
+	c.cTokens   = readInt();
+	int[] word = readInts();
+	for(int i = 0; i < word.length; i++) {
+	    c.cWord.add(i, word[i]);
+	}
+	int[] tag = readInts();
+	for(int i = 0; i < tag.length; i++) {
+	    c.cTag.add(i, tag[i]);
+	}
+	readPairCounts(c.cTagWord);
+	readPairCounts(c.cTagTag);
+	readPairCounts(c.cTagTagTag);
+	return c;
+    }
+
+    /**
+     * Copy the counts written by writeCounts, which must end the file,
+     * so they can be parsed later by readCounts on the copy.  Only the
+     * section lengths are checked now, so a truncated file still fails
+     * to load, but no count is hashed until the copy is read.
+     *
+     * @return A ModelFile reading the copy
+     */
+    public ModelFile readCountsLater() throws IOException
+    {
+	ModelFile c = new ModelFile();
+	c.fname = fname;
+	c.in    = ByteBuffer.allocate(in.remaining());
+	c.in.put(in);
+	c.in.flip();
+
+	c.readInt();
+	c.skip(4);
+	c.skip(4);
+	for(int i = 0; i < 3; i++) {
+	    c.skip(8);
+	    c.skip(4);
+	}
+	c.in.rewind();
+	return c;
+    }
+
+    protected void readPairCounts(PairCounts p) throws IOException
+    {
+	long[] keys = readLongs();
+	int[]  n    = readInts();
+	if(n.length != keys.length) {
+	    throw new IOException(fname + " is corrupt");
+	}
+	for(int i = 0; i < keys.length; i++) {
+	    p.add(keys[i], n[i]);
+	}
+    }
+
+    /**
+     * Read the rows of an EmissionTable.
+     *
+     * @return The table
+     */
+    public EmissionTable readEmissions() throws IOException
+    {
+	int[]   rowStart = readInts();
+	int[]   rowTag   = readInts();
+	float[] rowProb  = readFloats();
+	return new EmissionTable(rowStart, rowTag, rowProb);
+    }
+
+    /**
+     * Read a SuffixModel.
+     *
+     * @return The suffix trie
+     */
+    public SuffixModel readSuffixes() throws IOException
+    {
+	int[]  firstChild = readInts();
+	int[]  chars      = readInts();
+	int[]  parent     = readInts();
+	char[] nodeChar   = new char[chars.length];
+	for(int i = 0; i < chars.length; i++) {
+	    nodeChar[i] = (char)chars[i];
+	}
+	EmissionTable probs        = readEmissions();
+	float         theta        = readFloat();
+	int           maxLength    = readInt();
+	int           maxFrequency = readInt();
+	return new SuffixModel(firstChild, nodeChar, parent, probs, theta, maxLength, maxFrequency);
+    }
+
+    /**
+     * Read a vocabulary written with writeStrings(v.toArray()).  Every
+     * name is hashed again, so this takes time in proportion to the
+     * size of the vocabulary.
+     *
+     * @return A Vocabulary with the same ids
+     */
+    public Vocabulary readVocabulary() throws IOException
+    {
+	String[]   names = readStrings();
+	Vocabulary v     = new Vocabulary();
+	for(int i = 0; i < names.length; i++) {
+	    v.intern(names[i]);
+	}
+	return v;
+    }
+}
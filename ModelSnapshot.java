@@ -0,0 +1,211 @@
+package cs481.postag;
+
+/**
+ * A trained bigram model that never changes once made.
+ *
+ * <pre>
+ * Typical use:
+ * ModelSnapshot m = new ModelSnapshot(tagVocab, startTag, wordVocab, pTag, pTagWord,
+ *                                     pTagTag, openTags, suffixes, epsilon, 0);
+ * decoder.tagSentence(m, sent);
+ * </pre>
+ *
+ * A tagger builds a new snapshot each time it is trained, updated or
+ * loaded and publishes it through one volatile reference.  Threads
+ * tagging at the time finish their sentence with the snapshot they
+ * started with and pick up the new one with their next sentence, so
+ * tagging never takes a lock and never sees half a model.  The arrays
+ * and vocabularies handed to the constructor must not be changed
+ * afterwards.
+ */
+public class ModelSnapshot implements TagModel
+{
+    /**
+     * Array of all tags
+     */
+    protected final String[] tags;
+    /**
+     * Ids of all tags (the special start tag included)
+     */
+    protected final Vocabulary tagVocab;
+    /**
+     * Ids of all known words
+     */
+    protected final Vocabulary wordVocab;
+    /**
+     * Id of the start tag
+     */
+    protected final int startTag;
+    /**
+     * Probability of individual tags (i.e., P(tag)), indexed by tag id
+     */
+    protected final float[] pTag;
+    /**
+     * Probability of tags given specific words, as sparse rows by word id
+     */
+    protected final EmissionTable pTagWord;
+    /**
+     * Transition probability, indexed by previous * tags.length + current
+     */
+    protected final float[] pTagTag;
+    /**
+     * Tags an unknown word may have
+     */
+    protected final int[] openTags;
+    /**
+     * Probability of tags given the suffix of an unknown word
+     */
+    protected final SuffixModel suffixes;
+    /**
+     * Log probability of a tag never seen with a word
+     */
+    protected final float missing;
+    /**
+     * Beam width, or 0 for exact Viterbi
+     */
+    protected final int beam;
+    /**
+     * Emission rows of tokens tagged with this model so far
+     */
+    protected final EmissionCache cache;
+
+    /**
+     * Wrap a trained model.
+     *
+     * @param tagVocab  Ids of all tags
+     * @param startTag  Id of the start tag
+     * @param wordVocab Ids of all known words
+     * @param pTag      Log P(tag), indexed by tag id
+     * @param pTagWord  Log P(tag | word)
+     * @param pTagTag   Log transition probabilities
+     * @param openTags  Tags an unknown word may have
+     * @param suffixes  Tag probabilities of unknown words by suffix
+     * @param missing   Log probability of a tag never seen with a word
+     * @param beam      Beam width, or 0 for exact Viterbi
+     */
+    public ModelSnapshot(Vocabulary tagVocab, int startTag, Vocabulary wordVocab,
+			 float[] pTag, EmissionTable pTagWord, float[] pTagTag,
+			 int[] openTags, SuffixModel suffixes, float missing, int beam)
+    {
+	this.tags      = tagVocab.toArray();
+	this.tagVocab  = tagVocab;
+	this.startTag  = startTag;
+	this.wordVocab = wordVocab;
+	this.pTag      = pTag;
+	this.pTagWord  = pTagWord;
+	this.pTagTag   = pTagTag;
+	this.openTags  = openTags;
+	this.suffixes  = suffixes;
+	this.missing   = missing;
+	this.beam      = beam;
+	this.cache     = new EmissionCache(this, EmissionCache.defaultCapacity);
+    }
+
+    /**
+     * Copy a snapshot with another beam width.  The emission cache is
+     * shared, since rows do not depend on the beam.
+     *
+     * @param m    The snapshot to copy
+     * @param beam Beam width, or 0 for exact Viterbi
+     */
+    protected ModelSnapshot(ModelSnapshot m, int beam)
+    {
+	this.tags      = m.tags;
+	this.tagVocab  = m.tagVocab;
+	this.startTag  = m.startTag;
+	this.wordVocab = m.wordVocab;
+	this.pTag      = m.pTag;
+	this.pTagWord  = m.pTagWord;
+	this.pTagTag   = m.pTagTag;
+	this.openTags  = m.openTags;
+	this.suffixes  = m.suffixes;
+	this.missing   = m.missing;
+	this.beam      = beam;
+	this.cache     = m.cache;
+    }
+
+    /**
+     * The same model decoded with another beam width.
+     *
+     * @param width Beam width, or 0 for exact Viterbi
+     * @return A new snapshot
+     */
+    public ModelSnapshot withBeam(int width)
+    {
+	return new ModelSnapshot(this, width);
+    }
+
+    public String[] getTags() {
+	return tags;
+    }
+
+    public int getStartTag() {
+	return startTag;
+    }
+
+    public float[] getTransitions() {
+	return pTagTag;
+    }
+
+    public EmissionCache getEmissionCache() {
+	return cache;
+    }
+
+    public int getBeam() {
+	return beam;
+    }
+
+    public TagModel getSnapshot() {
+	return this;
+    }
+
+    /**
+     * Id of a word; an unknown word gets an id standing for its longest
+     * suffix in the suffix trie.
+     *
+     * @param word A lowercased word
+     * @return The id
+     */
+    public int lookupWord(String word) {
+	int id = wordVocab.lookup(word);
+	if (id == Vocabulary.UNKNOWN && suffixes != null) {
+	    return SuffixModel.wordId(suffixes.lookup(word));
+	}
+	return id;
+    }
+
+    /**
+     * Probability of each tag given a word: P(tag | suffix) for unknown
+     * words (P(tag) without a suffix trie), missing for tags never seen
+     * with a known word.
+     *
+     * @param word A word id from lookupWord
+     * @param out  Array indexed by tag id to fill in
+     */
+    public void fillEmissions(int word, float[] out) {
+	if (word == Vocabulary.UNKNOWN) {
+	    System.arraycopy(pTag, 0, out, 0, tags.length);
+	} else if (word < 0) {
+	    suffixes.fill(SuffixModel.node(word), out, tags.length, missing);
+	} else {
+	    pTagWord.fill(word, out, tags.length, missing);
+	}
+    }
+
+    /**
+     * Tags a word may have: those seen with a known word, the open
+     * class tags for an unknown word.
+     *
+     * @param word A word id from lookupWord
+     * @param out  Where to put the tag ids
+     * @param off  Index in out of the first tag id
+     * @return The number of tag ids put in out
+     */
+    public int fillTags(int word, int[] out, int off) {
+	if (word < 0) {
+	    System.arraycopy(openTags, 0, out, off, openTags.length);
+	    return openTags.length;
+	}
+	return pTagWord.tags(word, out, off);
+    }
+}
@@ -0,0 +1,204 @@
+package cs481.postag;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Determines the part of speech tags with a second order HMM, where
+ * each tag depends on the two tags before it.
+ *
+ * <pre>
+ * Typical use:
+ * POSTagTrigram pt = new POSTagTrigram();
+ * pt.train(training);
+ * pt.tag(testing);
+ * </pre>
+ *
+ * Tag trigram probabilities are smoothed by deleted interpolation with
+ * the tag bigram and unigram probabilities, as in TnT (Brants, 2000).
+ * Emissions and bigram transitions are those of POSTagBigram, and
+ * come from its Smoothing.  Decoding is over pairs of
+ * tags; see ViterbiDecoder.
+ *
+ * Run from the commandline like POSTagBigram.
+ */
+public class POSTagTrigram extends POSTagBigram implements TrigramModel
+{
+    /**
+     * Least weight any of the unigram, bigram and trigram estimates
+     * gets, so no sequence of tags is ever impossible
+     */
+    public static float lambdaFloor = 0.01f;
+
+    /**
+     * Make an untrained part of speech tagger.
+     */
+    public POSTagTrigram()
+    {
+	super("POSTagTrigram");
+    }
+
+    /**
+     * Find probabilities from word and tag counts.
+     *
+     * @param counts Counts of the training corpus
+     * @return The model, not yet published
+     */
+    protected ModelSnapshot estimate(TrainingCounts counts)
+    {
+	ModelSnapshot m = super.estimate(counts);
+
+	int        numtags    = m.tags.length;
+	int        startTag   = counts.startTag;
+	int        cTokens    = counts.cTokens;
+	IntCounts  cTag       = counts.cTag;
+	PairCounts cTagTag    = counts.cTagTag;
+	PairCounts cTagTagTag = counts.cTagTagTag;
+	long[]     tttkeys    = cTagTagTag.keys();
+
+	float[] lambda = deletedInterpolation(counts, tttkeys);
+
+	//Unigram and bigram part, the same whatever the tag before previous
+	double[] mix = new double[numtags * numtags];
+	for(int t2 = 0; t2 < numtags; t2++) {
+	    for(int t3 = 0; t3 < numtags; t3++) {
+		if(t3 != startTag) {
+		    mix[t2 * numtags + t3] = lambda[0] * ((double)cTag.get(t3)) / cTokens;
+		}
+	    }
+	}
+	long[] ttkeys = cTagTag.keys();
+	for(int i = 0; i < ttkeys.length; i++) {
+	    int t2 = Vocabulary.first(ttkeys[i]);
+	    int t3 = Vocabulary.second(ttkeys[i]);
+	    mix[t2 * numtags + t3] += lambda[1] * ((double)cTagTag.get(ttkeys[i])) / cTag.get(t2);
+	}
+
+	double[] p = new double[numtags * numtags * numtags];
+	for(int t1 = 0; t1 < numtags; t1++) {
+	    System.arraycopy(mix, 0, p, t1 * numtags * numtags, mix.length);
+	}
+	for(int i = 0; i < tttkeys.length; i++) {
+	    int t1 = Vocabulary.tripleId(tttkeys[i], 0);
+	    int t2 = Vocabulary.tripleId(tttkeys[i], 1);
+	    int t3 = Vocabulary.tripleId(tttkeys[i], 2);
+	    p[(t1 * numtags + t2) * numtags + t3] +=
+		lambda[2] * ((double)cTagTagTag.get(tttkeys[i])) / historyCount(counts, t1, t2);
+	}
+
+	float[] pTagTagTag = new float[p.length];
+	for(int i = 0; i < p.length; i++) {
+	    pTagTagTag[i] = (p[i] > 0) ? (float)Math.log(p[i]) : HMMTagger.epsilon;
+	}
+	return new TrigramSnapshot(m, lambda, pTagTagTag);
+    }
+
+    /**
+     * Number of times a pair of tags came before another tag.
+     *
+     * @param counts Counts of the training corpus
+     * @param t1     The tag before previous
+     * @param t2     The previous tag
+     * @return The count
+     */
+    protected int historyCount(TrainingCounts counts, int t1, int t2)
+    {
+	if(t1 == counts.startTag && t2 == counts.startTag) {
+	    return counts.cTag.get(counts.startTag);
+	}
+	return counts.cTagTag.get(Vocabulary.pair(t1, t2));
+    }
+
+    /**
+     * Find the interpolation weights: each trigram votes, with its
+     * count, for whichever estimate predicts it best once that
+     * trigram is taken out of the counts.  No weight is less than
+     * lambdaFloor.
+     *
+     * @param counts  Counts of the training corpus
+     * @param tttkeys The keys of counts.cTagTagTag
+     * @return Weights of the unigram, bigram and trigram probabilities
+     */
+    protected float[] deletedInterpolation(TrainingCounts counts, long[] tttkeys)
+    {
+	double[] l = new double[3];
+	for(int i = 0; i < tttkeys.length; i++) {
+	    int t1  = Vocabulary.tripleId(tttkeys[i], 0);
+	    int t2  = Vocabulary.tripleId(tttkeys[i], 1);
+	    int t3  = Vocabulary.tripleId(tttkeys[i], 2);
+	    int f   = counts.cTagTagTag.get(tttkeys[i]);
+	    int f12 = historyCount(counts, t1, t2);
+	    int f23 = counts.cTagTag.get(Vocabulary.pair(t2, t3));
+	    int f2  = counts.cTag.get(t2);
+	    int f3  = counts.cTag.get(t3);
+
+	    double c3 = (f12 > 1) ? (f - 1.0) / (f12 - 1) : 0;
+	    double c2 = (f2 > 1) ? (f23 - 1.0) / (f2 - 1) : 0;
+	    double c1 = (counts.cTokens > 1) ? (f3 - 1.0) / (counts.cTokens - 1) : 0;
+	    if(c3 >= c2 && c3 >= c1) {
+		l[2] += f;
+	    } else if(c2 >= c1) {
+		l[1] += f;
+	    } else {
+		l[0] += f;
+	    }
+	}
+
+	double sum = l[0] + l[1] + l[2];
+	if(sum == 0) {
+	    l[0] = 1;
+	    sum  = 1;
+	}
+
+	//An estimate that never won would otherwise leave unseen tag
+	//sequences with probability 0.  Weights at the floor stay there
+	//and the rest are scaled to make up 1
+	for(int i = 0; i < 3; i++) {
+	    l[i] /= sum;
+	}
+	for(int pass = 0; pass < 3; pass++) {
+	    double floored = 0;
+	    double rest    = 0;
+	    for(int i = 0; i < 3; i++) {
+		if(l[i] <= lambdaFloor) {
+		    floored += lambdaFloor;
+		} else {
+		    rest += l[i];
+		}
+	    }
+	    for(int i = 0; i < 3; i++) {
+		l[i] = (l[i] <= lambdaFloor) ? lambdaFloor : l[i] * (1 - floored) / rest;
+	    }
+	}
+	return new float[] {(float)l[0], (float)l[1], (float)l[2]};
+    }
+
+    public float[] getTrigrams() {
+	return ((TrigramSnapshot)model).getTrigrams();
+    }
+
+    protected void writeModel(ModelFile out, ModelSnapshot m) throws IOException {
+	super.writeModel(out, m);
+	out.writeFloats(((TrigramSnapshot)m).lambda);
+	out.writeFloats(((TrigramSnapshot)m).pTagTagTag);
+    }
+
+    protected ModelSnapshot readModel(ModelFile in) throws IOException {
+	ModelSnapshot m          = super.readModel(in);
+	float[]       lambda     = in.readFloats();
+	float[]       pTagTagTag = in.readFloats();
+	return new TrigramSnapshot(m, lambda, pTagTagTag);
+    }
+
+    /**
+     * Train on             the 1st XML file,
+     * tag                  the 2nd XML file,
+     * write the results in the 3rd XML file.
+     *
+     * @param argv Options, then XML file names; see TaggerMain.
+     */
+    public static void main(String[] argv) throws Exception
+    {
+	TaggerMain.run(new POSTagTrigram(), "POSTagTrigram", argv);
+    }
+}
@@ -0,0 +1,211 @@
+package cs481.postag;
+
+import java.util.*;
+
+/**
+ * Counts indexed by a pair of ids packed with Vocabulary.pair.
+ *
+ * This is an open addressing hash table of primitive longs and ints, so
+ * incrementing a count never allocates a key object.
+ */
+public class PairCounts
+{
+    /**
+     * Marks an empty slot (no real pair of non-negative ids packs to it)
+     */
+    protected static final long EMPTY = -1L;
+
+    /**
+     * Keys, or EMPTY
+     */
+    protected long[] keys;
+    /**
+     * Count for the key in the same slot
+     */
+    protected int[] counts;
+    /**
+     * Number of keys present
+     */
+    protected int size;
+
+    /**
+     * Make an empty table.
+     */
+    public PairCounts()
+    {
+	keys   = new long[64];
+	counts = new int[64];
+	Arrays.fill(keys, EMPTY);
+	size   = 0;
+    }
+
+    /**
+     * Remove all counts.
+     */
+    public void clear()
+    {
+	Arrays.fill(keys, EMPTY);
+	Arrays.fill(counts, 0);
+	size = 0;
+    }
+
+    /**
+     * Find the slot for key.
+     *
+     * @param key The key to find
+     * @return The slot holding key, or the empty slot where it would go
+     */
+    protected int slot(long key)
+    {
+	int mask = keys.length - 1;
+	long h   = key * 0x9E3779B97F4A7C15L;
+	int  s   = (int)(h ^ (h >>> 32)) & mask;
+
+	while(keys[s] != EMPTY && keys[s] != key) {
+	    s = (s + 1) & mask;
+	}
+	return s;
+    }
+
+    /**
+     * Increment the count for key.
+     *
+     * @param key The key of the field to increment
+     */
+    public void inc(long key)
+    {
+	add(key, 1);
+    }
+
+    /**
+     * Add to the count for key.
+     *
+     * @param key The key of the field to change
+     * @param n   The amount to add
+     */
+    public void add(long key, int n)
+    {
+	int s = slot(key);
+	if(keys[s] == EMPTY) {
+	    keys[s] = key;
+	    size++;
+	    if(size * 2 > keys.length) {
+		grow();
+		s = slot(key);
+	    }
+	}
+	counts[s] += n;
+    }
+
+    /**
+     * Get the count for key.
+     *
+     * @param key The key to look up
+     * @return The count, or 0 if never incremented
+     */
+    public int get(long key)
+    {
+	int s = slot(key);
+	return (keys[s] == EMPTY) ? 0 : counts[s];
+    }
+
+    /**
+     * Number of distinct keys.
+     *
+     * @return The number of keys present
+     */
+    public int size()
+    {
+	return size;
+    }
+
+    /**
+     * All keys present, in ascending order.
+     *
+     * @return A new array of length size()
+     */
+    public long[] keys()
+    {
+	long[] out = new long[size];
+	int    n   = 0;
+	for(int i = 0; i < keys.length; i++) {
+	    if(keys[i] != EMPTY) {
+		out[n++] = keys[i];
+	    }
+	}
+	Arrays.sort(out);
+	return out;
+    }
+
+    /**
+     * Number of distinct keys with each first id.
+     *
+     * @param n One more than the largest first id
+     * @return The numbers, indexed by first id
+     */
+    public int[] firstTypes(int n)
+    {
+	int[] out = new int[n];
+	for(int i = 0; i < keys.length; i++) {
+	    if(keys[i] != EMPTY) {
+		out[Vocabulary.first(keys[i])]++;
+	    }
+	}
+	return out;
+    }
+
+    /**
+     * Number of distinct keys with each second id.
+     *
+     * @param n One more than the largest second id
+     * @return The numbers, indexed by second id
+     */
+    public int[] secondTypes(int n)
+    {
+	int[] out = new int[n];
+	for(int i = 0; i < keys.length; i++) {
+	    if(keys[i] != EMPTY) {
+		out[Vocabulary.second(keys[i])]++;
+	    }
+	}
+	return out;
+    }
+
+    /**
+     * Sum of the counts of the keys with each first id.
+     *
+     * @param n One more than the largest first id
+     * @return The sums, indexed by first id
+     */
+    public int[] firstTotals(int n)
+    {
+	int[] out = new int[n];
+	for(int i = 0; i < keys.length; i++) {
+	    if(keys[i] != EMPTY) {
+		out[Vocabulary.first(keys[i])] += counts[i];
+	    }
+	}
+	return out;
+    }
+
+    /**
+     * Double the table size and rehash.
+     */
+    protected void grow()
+    {
+	long[] oldKeys   = keys;
+	int[]  oldCounts = counts;
+
+	keys   = new long[oldKeys.length * 2];
+	counts = new int[oldKeys.length * 2];
+	Arrays.fill(keys, EMPTY);
+
+	for(int i = 0; i < oldKeys.length; i++) {
+	    if(oldKeys[i] != EMPTY) {
+		int s = slot(oldKeys[i]);
+		keys[s]   = oldKeys[i];
+		counts[s] = oldCounts[i];
+	    }
+	}
+    }
+}
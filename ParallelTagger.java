@@ -0,0 +1,153 @@
+package cs481.postag;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tags many sentences at once on a fork-join pool.
+ *
+ * <pre>
+ * Typical use:
+ * ParallelTagger par = new ParallelTagger(8);
+ * par.tag(pt, testing);
+ * par.shutdown();
+ * </pre>
+ *
+ * A trained model is only read while tagging, so the sentences can be
+ * split among threads freely.  Each thread has its own ViterbiDecoder,
+ * and each sentence is decoded exactly as it would be sequentially.
+ */
+public class ParallelTagger
+{
+    /**
+     * Number of sentences below which a task stops splitting
+     */
+    public static int grain = 32;
+
+    /**
+     * Pool the work runs on
+     */
+    protected ForkJoinPool pool;
+    /**
+     * One decoder per worker thread
+     */
+    protected ThreadLocal decoders;
+    /**
+     * Where the decoders record what they did, or null
+     */
+    protected TaggerMetrics metrics;
+
+    /**
+     * Make a tagger with its own pool.
+     *
+     * @param threads Number of worker threads
+     */
+    public ParallelTagger(int threads)
+    {
+	this(new ForkJoinPool(threads), null);
+    }
+
+    /**
+     * Make a tagger with its own pool that records each sentence.
+     *
+     * @param threads Number of worker threads
+     * @param metrics Where to record, or null
+     */
+    public ParallelTagger(int threads, TaggerMetrics metrics)
+    {
+	this(new ForkJoinPool(threads), metrics);
+    }
+
+    /**
+     * Make a tagger that runs on an existing pool.
+     *
+     * @param pool    The pool to run on
+     * @param metrics Where to record, or null
+     */
+    public ParallelTagger(ForkJoinPool pool, TaggerMetrics metrics)
+    {
+	this.pool    = pool;
+	this.metrics = metrics;
+	decoders     = new ThreadLocal() {
+		protected Object initialValue() {
+		    return new ViterbiDecoder(ParallelTagger.this.metrics);
+		}
+	    };
+    }
+
+    /**
+     * The decoder belonging to the calling thread.
+     *
+     * @return A decoder no other thread uses
+     */
+    protected ViterbiDecoder decoder()
+    {
+	return (ViterbiDecoder)decoders.get();
+    }
+
+    /**
+     * Tags a Vector of paragraphs by setting the &quot;pos&quot; attribute in the Tokens.
+     *
+     * @param model   The model to score with
+     * @param testing The paragraphs to be tagged.
+     */
+    public void tag(TagModel model, Vector testing)
+    {
+	Vector sents = new Vector();
+	for(Iterator i = testing.iterator(); i.hasNext();) {
+	    sents.addAll((Vector)i.next());
+	}
+	tagSentences(model, (Vector[])sents.toArray(new Vector[0]));
+    }
+
+    /**
+     * Tags sentences by setting the &quot;pos&quot; attribute in the Tokens.
+     *
+     * @param model The model to score with
+     * @param sents The sentences to be tagged.
+     */
+    public void tagSentences(TagModel model, Vector[] sents)
+    {
+	pool.invoke(new Chunk(model, sents, 0, sents.length));
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown()
+    {
+	pool.shutdown();
+    }
+
+    /**
+     * Tags sents[lo..hi), splitting in half until small enough.
+     */
+    protected class Chunk extends RecursiveAction
+    {
+	private static final long serialVersionUID = 1L;
+
+	protected TagModel model;
+	protected Vector[] sents;
+	protected int      lo;
+	protected int      hi;
+
+	protected Chunk(TagModel model, Vector[] sents, int lo, int hi)
+	{
+	    this.model = model;
+	    this.sents = sents;
+	    this.lo    = lo;
+	    this.hi    = hi;
+	}
+
+	protected void compute()
+	{
+	    if(hi - lo <= grain) {
+		decoder().tagSentences(model, sents, lo, hi);
+	    } else {
+		int mid = (lo + hi) >>> 1;
+		invokeAll(new Chunk(model, sents, lo, mid),
+			  new Chunk(model, sents, mid, hi));
+	    }
+	}
+    }
+}
@@ -0,0 +1,25 @@
+package cs481.postag;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Sentences that can be read more than once without holding them all
+ * in memory, e.g. once per iteration of Baum-Welch.
+ *
+ * <pre>
+ * Typical use:
+ * SentenceSource src = CorpusReader.source("raw.xml");
+ * Iterator i = src.open();
+ * </pre>
+ */
+public interface SentenceSource
+{
+    /**
+     * Start reading the sentences from the first.
+     *
+     * @return An Iterator over sentences of tokens, to be closed after
+     *         use if it is Closeable
+     */
+    public Iterator open() throws IOException;
+}
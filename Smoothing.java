@@ -0,0 +1,50 @@
+package cs481.postag;
+
+/**
+ * How an HMMTagger turns training counts into probabilities.
+ *
+ * <pre>
+ * Typical use:
+ * HMMTagger pt = new HMMTagger(new WittenBellSmoothing(), "HMMTagger");
+ * pt.train(training);
+ * </pre>
+ *
+ * A Smoothing only fills in the tables a ModelSnapshot is made of, so
+ * every estimator is trained, saved and decoded by the same code.
+ * Emissions are P(tag | word), as in the original taggers.  Tags never
+ * seen with a known word all get the one value missing, which also
+ * fills the gaps of the suffix model for unknown words.
+ *
+ * Implementations should keep no state between calls, since one
+ * tagger may estimate from different counts at different times.
+ */
+public interface Smoothing
+{
+    /**
+     * Short name written to model files and accepted by
+     * HMMTagger.smoothing.
+     *
+     * @return The name, e.g. &quot;wb&quot;
+     */
+    public String getName();
+
+    /**
+     * Log P(tag | word) of (tag, word) pairs that were seen, and the
+     * log probability of a known word with a tag never seen with it,
+     * which is found from the same statistics.
+     *
+     * @param counts  Counts of the training corpus
+     * @param keys    The keys of counts.cTagWord, in ascending order
+     * @param missing Where to put the probability of an unseen pair, at index 0
+     * @return The log probability of each key, in the same order
+     */
+    public float[] emissions(TrainingCounts counts, long[] keys, float[] missing);
+
+    /**
+     * Log P(tag | previous tag) of every pair of tags.
+     *
+     * @param counts Counts of the training corpus
+     * @return An array indexed by previous * number of tags + tag
+     */
+    public float[] transitions(TrainingCounts counts);
+}
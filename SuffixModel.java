@@ -0,0 +1,324 @@
+package cs481.postag;
+
+import java.util.*;
+
+/**
+ * Probability of tags given the suffix of an unknown word, as in TnT
+ * (Brants, 2000).
+ *
+ * <pre>
+ * Typical use:
+ * SuffixModel sm = new SuffixModel(counts);
+ * int node = sm.lookup("blorfing");
+ * sm.fill(node, out, numtags, epsilon);
+ * </pre>
+ *
+ * Suffixes of up to maxLength letters of the words seen at most
+ * maxFrequency times in training are kept in a trie, read from the
+ * last letter backwards.  Nodes are numbered breadth first with each
+ * node's children in letter order, so the children of node n are the
+ * nodes firstChild[n] to firstChild[n+1]-1 and a lookup is a binary
+ * search of nodeChar per letter.
+ *
+ * The probability of a tag given a suffix mixes the estimate at each
+ * node with that of the next shorter suffix, weighted by theta, the
+ * standard deviation of the tag probabilities.
+ */
+public class SuffixModel
+{
+    /**
+     * maxLength of a SuffixModel built with the default parameters
+     */
+    public static final int DEFAULT_MAX_LENGTH = 10;
+    /**
+     * maxFrequency of a SuffixModel built with the default parameters
+     */
+    public static final int DEFAULT_MAX_FREQUENCY = 10;
+
+    /**
+     * Longest suffix used; saved with the model, so a loaded trie is
+     * looked up as it was built
+     */
+    protected final int maxLength;
+    /**
+     * Most times a word may occur in training to count towards
+     * suffixes; saved with the model like maxLength
+     */
+    protected final int maxFrequency;
+
+    /**
+     * First child of each node; firstChild[number of nodes] is the number of nodes
+     */
+    protected int[] firstChild;
+    /**
+     * Letter leading to each node from its parent
+     */
+    protected char[] nodeChar;
+    /**
+     * Parent of each node (the root, node 0, is its own parent)
+     */
+    protected int[] parent;
+    /**
+     * Unsmoothed probability (not log) of each tag at each node
+     */
+    protected EmissionTable probs;
+    /**
+     * Weight of the next shorter suffix when smoothing
+     */
+    protected float theta;
+
+    /**
+     * Build the trie from training counts, with the default maxLength
+     * and maxFrequency.
+     *
+     * @param counts Counts of the training corpus
+     */
+    public SuffixModel(TrainingCounts counts)
+    {
+	this(counts, DEFAULT_MAX_LENGTH, DEFAULT_MAX_FREQUENCY);
+    }
+
+    /**
+     * Build the trie from training counts.
+     *
+     * @param counts       Counts of the training corpus
+     * @param maxLength    Longest suffix used
+     * @param maxFrequency Most times a word may occur to count towards suffixes
+     */
+    public SuffixModel(TrainingCounts counts, int maxLength, int maxFrequency)
+    {
+	this.maxLength    = maxLength;
+	this.maxFrequency = maxFrequency;
+
+	//Every suffix of every rare word, reversed, so the root is ""
+	HashSet   seen  = new HashSet();
+	Vector    nodes = new Vector();
+	String[]  keys  = new String[counts.wordVocab.size()];
+	for(int w = 0; w < keys.length; w++) {
+	    if(counts.cWord.get(w) <= maxFrequency) {
+		keys[w] = key(counts.wordVocab.get(w));
+		for(int n = 0; n <= keys[w].length(); n++) {
+		    if(seen.add(keys[w].substring(0, n))) {
+			nodes.add(keys[w].substring(0, n));
+		    }
+		}
+	    }
+	}
+	if(nodes.isEmpty()) {
+	    nodes.add("");
+	}
+
+	//Breadth first, each level in letter order
+	String[] sorted = (String[])nodes.toArray(new String[0]);
+	Arrays.sort(sorted, new Comparator() {
+		public int compare(Object a, Object b) {
+		    String s = (String)a;
+		    String t = (String)b;
+		    return (s.length() != t.length()) ? s.length() - t.length() : s.compareTo(t);
+		}
+	    });
+	HashMap ids = new HashMap();
+	for(int i = 0; i < sorted.length; i++) {
+	    ids.put(sorted[i], Integer.valueOf(i));
+	}
+
+	int numnodes = sorted.length;
+	firstChild = new int[numnodes + 1];
+	nodeChar   = new char[numnodes];
+	parent     = new int[numnodes];
+	for(int i = 1; i < numnodes; i++) {
+	    String s = sorted[i];
+	    parent[i]   = ((Integer)ids.get(s.substring(0, s.length() - 1))).intValue();
+	    nodeChar[i] = s.charAt(s.length() - 1);
+	    firstChild[parent[i] + 1]++;
+	}
+	//Children follow all earlier nodes' children, starting after the root
+	firstChild[0] = 1;
+	for(int n = 0; n < numnodes; n++) {
+	    firstChild[n + 1] += firstChild[n];
+	}
+
+	//Each (tag, rare word) count goes to every node on the word's path
+	PairCounts cTagNode = new PairCounts();
+	IntCounts  cNode    = new IntCounts();
+	long[]     twkeys   = counts.cTagWord.keys();
+	for(int i = 0; i < twkeys.length; i++) {
+	    int    w = Vocabulary.second(twkeys[i]);
+	    String k = keys[w];
+	    if(k == null) {
+		continue;
+	    }
+	    int t = Vocabulary.first(twkeys[i]);
+	    int c = counts.cTagWord.get(twkeys[i]);
+	    for(int n = 0; n <= k.length(); n++) {
+		int node = ((Integer)ids.get(k.substring(0, n))).intValue();
+		cTagNode.add(Vocabulary.pair(t, node), c);
+		cNode.add(node, c);
+	    }
+	}
+
+	long[]  tnkeys  = cTagNode.keys();
+	float[] tnprobs = new float[tnkeys.length];
+	for(int i = 0; i < tnkeys.length; i++) {
+	    tnprobs[i] = ((float)cTagNode.get(tnkeys[i])) / cNode.get(Vocabulary.second(tnkeys[i]));
+	}
+	probs = new EmissionTable(numnodes, tnkeys, tnprobs);
+
+	//Standard deviation of P(tag) over the real tags
+	int    s    = counts.tagVocab.size() - 1;
+	double mean = 1.0 / s;
+	double sum  = 0;
+	for(int t = 0; t < counts.tagVocab.size(); t++) {
+	    if(t != counts.startTag) {
+		double d = ((double)counts.cTag.get(t)) / counts.cTokens - mean;
+		sum += d * d;
+	    }
+	}
+	theta = (s > 1) ? (float)Math.sqrt(sum / (s - 1)) : 0f;
+    }
+
+    /**
+     * Wrap a trie that was already built, e.g. read by ModelFile.
+     *
+     * @param firstChild   First child of each node, plus the number of nodes
+     * @param nodeChar     Letter leading to each node
+     * @param parent       Parent of each node
+     * @param probs        Unsmoothed probability of each tag at each node
+     * @param theta        Smoothing weight
+     * @param maxLength    Longest suffix the trie was built with
+     * @param maxFrequency Most occurrences of the words it was built from
+     */
+    public SuffixModel(int[] firstChild, char[] nodeChar, int[] parent, EmissionTable probs, float theta,
+		       int maxLength, int maxFrequency)
+    {
+	this.maxLength    = maxLength;
+	this.maxFrequency = maxFrequency;
+	this.firstChild = firstChild;
+	this.nodeChar   = nodeChar;
+	this.parent     = parent;
+	this.probs      = probs;
+	this.theta      = theta;
+    }
+
+    /**
+     * The reversed last maxLength letters of a word.
+     */
+    protected String key(String word)
+    {
+	int n = Math.min(word.length(), maxLength);
+	char[] k = new char[n];
+	for(int i = 0; i < n; i++) {
+	    k[i] = word.charAt(word.length() - 1 - i);
+	}
+	return new String(k);
+    }
+
+    public int getMaxLength()
+    {
+	return maxLength;
+    }
+
+    public int getMaxFrequency()
+    {
+	return maxFrequency;
+    }
+
+    /**
+     * Number of nodes in the trie.
+     *
+     * @return The number of suffixes kept, plus one for the empty suffix
+     */
+    public int size()
+    {
+	return nodeChar.length;
+    }
+
+    /**
+     * Find the longest known suffix of a word.
+     *
+     * @param word A lowercased word
+     * @return Its node; 0 (the empty suffix) if even its last letter is unknown
+     */
+    public int lookup(String word)
+    {
+	int node = 0;
+	int stop = Math.max(0, word.length() - maxLength);
+	for(int i = word.length() - 1; i >= stop; i--) {
+	    char c  = word.charAt(i);
+	    int  lo = firstChild[node];
+	    int  hi = firstChild[node + 1] - 1;
+	    while(lo <= hi) {
+		int mid = (lo + hi) >>> 1;
+		if(nodeChar[mid] < c) {
+		    lo = mid + 1;
+		} else {
+		    hi = mid - 1;
+		}
+	    }
+	    if(lo == firstChild[node + 1] || nodeChar[lo] != c) {
+		break;
+	    }
+	    node = lo;
+	}
+	return node;
+    }
+
+    /**
+     * Log probability of each tag given a suffix.
+     *
+     * @param node    A node found by lookup
+     * @param out     Array indexed by tag id to fill in
+     * @param numtags Number of tags to fill
+     * @param missing Value for tags never seen with a rare word
+     */
+    public void fill(int node, float[] out, int numtags, float missing)
+    {
+	Arrays.fill(out, 0, numtags, 0f);
+	smooth(node, out, numtags);
+	for(int t = 0; t < numtags; t++) {
+	    out[t] = (out[t] > 0f) ? (float)Math.log(out[t]) : missing;
+	}
+    }
+
+    /**
+     * Put the smoothed probabilities of a node in out, shorter suffixes first.
+     */
+    protected void smooth(int node, float[] out, int numtags)
+    {
+	float add = 1f;
+	if(node != 0) {
+	    smooth(parent[node], out, numtags);
+	    float keep = theta / (1f + theta);
+	    add = 1f / (1f + theta);
+	    for(int t = 0; t < numtags; t++) {
+		out[t] *= keep;
+	    }
+	}
+	for(int p = probs.rowStart[node]; p < probs.rowStart[node + 1]; p++) {
+	    out[probs.rowTag[p]] += add * probs.rowProb[p];
+	}
+    }
+
+    /**
+     * Id standing for an unknown word with a given suffix, which can be
+     * told from Vocabulary.UNKNOWN and from real word ids.
+     *
+     * @param node A node found by lookup
+     * @return A negative id
+     */
+    public static int wordId(int node)
+    {
+	return -2 - node;
+    }
+
+    /**
+     * Node of an id made by wordId.
+     *
+     * @param word An id made by wordId
+     * @return The node
+     */
+    public static int node(int word)
+    {
+	return -2 - word;
+    }
+}
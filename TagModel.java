@@ -0,0 +1,81 @@
+package cs481.postag;
+
+/**
+ * A trained bigram HMM as seen by a decoder.
+ *
+ * Tag and word ids are those handed out by the model's Vocabulary
+ * objects.  All probabilities are natural logs.
+ */
+public interface TagModel
+{
+    /**
+     * All tags, indexed by tag id.
+     *
+     * @return The tags
+     */
+    public String[] getTags();
+
+    /**
+     * Id of the special start tag that precedes every sentence.
+     *
+     * @return The start tag id
+     */
+    public int getStartTag();
+
+    /**
+     * Transition probabilities, indexed by previous * number of tags + current.
+     *
+     * @return The transition matrix
+     */
+    public float[] getTransitions();
+
+    /**
+     * Id of a word.
+     *
+     * @param word A lowercased word
+     * @return The id, or a negative id for an unknown word: either
+     *         Vocabulary.UNKNOWN or one the model made from the word
+     */
+    public int lookupWord(String word);
+
+    /**
+     * Probability of each tag given a word.
+     *
+     * @param word A word id from lookupWord
+     * @param out  Array indexed by tag id to fill in
+     */
+    public void fillEmissions(int word, float[] out);
+
+    /**
+     * Tags a word may have.  Decoders only consider these.
+     *
+     * @param word A word id from lookupWord
+     * @param out  Where to put the tag ids
+     * @param off  Index in out of the first tag id
+     * @return The number of tag ids put in out
+     */
+    public int fillTags(int word, int[] out, int off);
+
+    /**
+     * Cache of the emission rows of tokens seen so far.
+     *
+     * @return The cache, or null to look every token up
+     */
+    public EmissionCache getEmissionCache();
+
+    /**
+     * Beam width to decode with.
+     *
+     * @return The number of states kept at each word, or 0 for exact Viterbi
+     */
+    public int getBeam();
+
+    /**
+     * The model to tag one sentence with.  A tagger whose model can be
+     * replaced while it tags returns the one in use at the time, so no
+     * sentence mixes two models.
+     *
+     * @return A model that does not change
+     */
+    public TagModel getSnapshot();
+}
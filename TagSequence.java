@@ -0,0 +1,29 @@
+package cs481.postag;
+
+/**
+ * One way of tagging a sentence and its score, as found by
+ * Tagger.tagKBest.
+ */
+public class TagSequence
+{
+    /**
+     * The tag of each word
+     */
+    public final String[] tags;
+    /**
+     * Log probability of the path through the tags, as Viterbi scores it
+     */
+    public final float score;
+
+    /**
+     * Make a tag sequence.
+     *
+     * @param tags  The tag of each word
+     * @param score Log probability of the path
+     */
+    public TagSequence(String[] tags, float score)
+    {
+	this.tags  = tags;
+	this.score = score;
+    }
+}
@@ -0,0 +1,158 @@
+package cs481.postag;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A part of speech tagger that can be trained and run from TaggerMain.
+ *
+ * Any number of threads may tag at once, also while another thread
+ * trains, updates or loads: the trained model is a ModelSnapshot that
+ * is replaced whole, and each sentence is tagged with the one that
+ * was current when it started.
+ */
+public interface Tagger extends TagModel
+{
+    /**
+     * Train the part of speech tagger.
+     *
+     * @param training A vector of paragraphs which have tokens with the attribute &quot;pos&quot;.
+     */
+    public void train(Vector training);
+
+    /**
+     * Train the part of speech tagger, counting on several threads.
+     *
+     * @param training A vector of paragraphs which have tokens with the attribute &quot;pos&quot;.
+     * @param threads  Number of threads to count with
+     */
+    public void train(Vector training, int threads);
+
+    /**
+     * Train the part of speech tagger on sentences read one at a time.
+     *
+     * @param sentences An Iterator over sentences of tokens with the attribute &quot;pos&quot;.
+     * @param threads   Number of threads to count with
+     */
+    public void train(Iterator sentences, int threads);
+
+    /**
+     * Add more training data to the model without retraining on what
+     * it has already seen.
+     *
+     * @param training A vector of paragraphs which have tokens with the attribute &quot;pos&quot;.
+     * @param threads  Number of threads to count with
+     */
+    public void update(Vector training, int threads);
+
+    /**
+     * Add more training data, read one sentence at a time, to the model.
+     *
+     * @param sentences An Iterator over sentences of tokens with the attribute &quot;pos&quot;.
+     * @param threads   Number of threads to count with
+     */
+    public void update(Iterator sentences, int threads);
+
+    /**
+     * Re-estimate the trained model on untagged sentences by
+     * Baum-Welch (EM), starting from what training or loading left.
+     *
+     * @param sentences  The untagged sentences, read once per iteration,
+     *                   e.g. CorpusReader.source(fname)
+     * @param iterations Number of iterations
+     * @param threads    Number of threads to run the E-step on
+     * @param progress   Where to report each iteration's time and log likelihood, or null
+     */
+    public void trainEM(SentenceSource sentences, int iterations, int threads, PrintStream progress);
+
+    /**
+     * Tags a sentence by setting the &quot;pos&quot; attribute in the Tokens.
+     *
+     * @param sent The sentence to be tagged.
+     */
+    public void tagSentence(Vector sent);
+
+    /**
+     * Tags many sentences at once, in batches, by setting the
+     * &quot;pos&quot; attribute in the Tokens.
+     *
+     * @param sents The sentences to be tagged.
+     */
+    public void tagSentences(Vector[] sents);
+
+    /**
+     * Tags a sentence like tagSentence, and says how sure the model is
+     * of each tag.
+     *
+     * @param sent The sentence to be tagged.
+     * @return The posterior probability P(tag | sentence) of the tag
+     *         given to each word
+     */
+    public float[] tagConfidence(Vector sent);
+
+    /**
+     * Finds the k most probable ways of tagging a sentence, without
+     * setting any attribute.  The first is the tagging tagSentence
+     * gives when there is no beam.
+     *
+     * @param sent The sentence
+     * @param k    Most sequences to find, at most ViterbiDecoder.maxKBest
+     * @return The sequences, best first
+     */
+    public TagSequence[] tagKBest(Vector sent, int k);
+
+    /**
+     * Tags a Vector of paragraphs by setting the &quot;pos&quot; attribute in the Tokens.
+     *
+     * @param testing The paragraphs to be tagged.
+     */
+    public void tag(Vector testing);
+
+    /**
+     * Tags a Vector of paragraphs using several threads.
+     *
+     * @param testing The paragraphs to be tagged.
+     * @param threads Number of threads; 1 tags on the calling thread
+     */
+    public void tag(Vector testing, int threads);
+
+    /**
+     * Tags sentences as they are read and writes each one as soon as it
+     * is tagged, in input order.  Closes in and out.
+     *
+     * @param in      Untagged sentences
+     * @param out     Where the tagged sentences go
+     * @param threads Number of tagging threads
+     * @return The number of sentences tagged
+     */
+    public int tag(CorpusReader in, CorpusWriter out, int threads) throws IOException;
+
+    /**
+     * Decode keeping only the best width states at each word, which is
+     * faster but may miss the most probable tags.
+     *
+     * @param width Beam width, or 0 for exact Viterbi
+     */
+    public void setBeam(int width);
+
+    /**
+     * Counts of sentences and tokens tagged, unknown words and latency.
+     *
+     * @return The live metrics
+     */
+    public TaggerMetrics getMetrics();
+
+    /**
+     * Write the trained model to a file that load can read back.
+     *
+     * @param fname Name of the model file
+     */
+    public void save(String fname) throws IOException;
+
+    /**
+     * Replace all training information with a model written by save.
+     *
+     * @param fname Name of the model file
+     */
+    public void load(String fname) throws IOException;
+}
@@ -0,0 +1,151 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Commandline driver shared by the taggers.
+ *
+ * <pre>
+ * java cs481.postag.POSTag [-threads N] [-beam K] &lt;train XML&gt; &lt;test XML&gt; &lt;output XML&gt;
+ * java cs481.postag.POSTag [-threads N] [-beam K] -save &lt;model&gt; &lt;train XML&gt; [&lt;test XML&gt; &lt;output XML&gt;]
+ * java cs481.postag.POSTag [-threads N] [-beam K] -load &lt;model&gt; [-update &lt;XML&gt;] [-save &lt;model&gt;] [&lt;test XML&gt; &lt;output XML&gt;]
+ * java cs481.postag.POSTag [-threads N] [-em &lt;XML&gt;] [-iterations N] ...
+ * </pre>
+ *
+ * -save writes the trained model so later runs can -load it instead
+ * of retraining; with only a training file it trains and stops.
+ * -update adds another tagged file to the trained or loaded model
+ * before it is saved or used, without going over the first again.
+ * -beam tags with a beam search keeping K states per word instead of
+ * exact Viterbi.  -em re-estimates the model on an untagged file by
+ * Baum-Welch for -iterations iterations (default 5), after any update
+ * and before it is saved or used; a second order model rejects it.
+ */
+public class TaggerMain
+{
+    /**
+     * Print usage and exit.
+     *
+     * @param name Class name of the tagger
+     */
+    protected static void usage(String name)
+    {
+	System.err.println("Wrong arguments.");
+	System.err.println(
+			   "Format:  java cs481.postag." + name + " [-threads N] [-beam K] <train XML> <test XML> <output XML>");
+	System.err.println(
+			   "         java cs481.postag." + name + " [-threads N] [-beam K] -save <model> <train XML> [<test XML> <output XML>]");
+	System.err.println(
+			   "         java cs481.postag." + name + " [-threads N] [-beam K] -load <model> [-update <XML>] [-save <model>] [<test XML> <output XML>]");
+	System.err.println(
+			   "         Either may also take [-em <untagged XML>] [-iterations N] to re-estimate by EM,");
+	System.err.println(
+			   "         except with a second order model such as POSTagTrigram.");
+	System.err.println(
+			   "Example: java cs481.postag." + name + " -threads 8 train.xml untagged.xml nowtagged.xml");
+	System.exit(1);
+    }
+
+    /**
+     * Train on             the 1st XML file (or load a saved model),
+     * tag                  the next XML file,
+     * write the results in the last XML file.
+     *
+     * @param pt   The untrained tagger
+     * @param name Class name of the tagger, for messages
+     * @param argv Options followed by XML file names.
+     */
+    public static void run(Tagger pt, String name, String[] argv) throws Exception
+    {
+	int    threads = 1;
+	int    beam    = 0;
+	String save    = null;
+	String load    = null;
+	String update  = null;
+	String em      = null;
+	int    iters   = 5;
+	int    a       = 0;
+
+	while(a < argv.length && argv[a].startsWith("-")) {
+	    if(argv[a].equals("-threads") && a + 1 < argv.length) {
+		threads = Integer.parseInt(argv[a + 1]);
+		a += 2;
+	    } else if(argv[a].equals("-beam") && a + 1 < argv.length) {
+		beam = Integer.parseInt(argv[a + 1]);
+		a += 2;
+	    } else if(argv[a].equals("-save") && a + 1 < argv.length) {
+		save = argv[a + 1];
+		a += 2;
+	    } else if(argv[a].equals("-load") && a + 1 < argv.length) {
+		load = argv[a + 1];
+		a += 2;
+	    } else if(argv[a].equals("-update") && a + 1 < argv.length) {
+		update = argv[a + 1];
+		a += 2;
+	    } else if(argv[a].equals("-em") && a + 1 < argv.length) {
+		em = argv[a + 1];
+		a += 2;
+	    } else if(argv[a].equals("-iterations") && a + 1 < argv.length) {
+		iters = Integer.parseInt(argv[a + 1]);
+		a += 2;
+	    } else {
+		usage(name);
+	    }
+	}
+
+	int nfiles = argv.length - a;
+	//Without a test file there must be a model to save
+	int ntrain = (load != null) ? 0 : 1;
+	if(!(nfiles == ntrain + 2 || (save != null && nfiles == ntrain))) {
+	    usage(name);
+	}
+	if(em != null && pt instanceof TrigramModel) {
+	    System.err.println(name + " cannot be trained by EM.");
+	    usage(name);
+	}
+
+	if(load != null) {
+	    pt.load(load);
+	    System.out.println("Loaded model.");
+	} else {
+	    //Stream the training file so it never has to fit in memory
+	    CorpusReader training = new CorpusReader(argv[a++]);
+	    pt.train(training, threads);
+	    training.close();
+	    System.out.println("Trained.");
+	}
+
+	if(update != null) {
+	    CorpusReader more = new CorpusReader(update);
+	    pt.update(more, threads);
+	    more.close();
+	    System.out.println("Updated.");
+	}
+
+	if(em != null) {
+	    pt.trainEM(CorpusReader.source(em), iters, threads, System.out);
+	}
+
+	if(save != null) {
+	    pt.save(save);
+	    System.out.println("Saved model.");
+	}
+
+	if(a == argv.length) {
+	    return;
+	}
+	pt.setBeam(beam);
+
+	//Read, tag and write at once so the testing file never has to fit in memory
+	CorpusReader in = new CorpusReader(argv[a]);
+	int n = pt.tag(in, new CorpusWriter(new FileOutputStream(argv[a + 1]), in), threads);
+	System.out.println("Tagged " + n + " sentences.");
+	pt.getMetrics().print(System.out);
+	if(pt.getEmissionCache() != null) {
+	    pt.getEmissionCache().print(System.out);
+	}
+    }
+}
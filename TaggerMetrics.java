@@ -0,0 +1,196 @@
+package cs481.postag;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts of what a tagger has done, safe to update from many threads.
+ *
+ * <pre>
+ * Typical use:
+ * pt.tag(testing);
+ * TaggerMetrics m = pt.getMetrics();
+ * System.out.println(m.getSentences() + " sentences, " + m.getUnknownRate() + " unknown");
+ * </pre>
+ *
+ * Sentence latencies go into a histogram of power of two buckets:
+ * bucket i holds latencies of at least 2^i and less than 2^(i+1)
+ * microseconds (bucket 0 also holds anything under 1 microsecond).
+ */
+public class TaggerMetrics
+{
+    /**
+     * Number of latency buckets
+     */
+    public static final int BUCKETS = 32;
+
+    protected LongAdder       sentences;
+    protected LongAdder       tokens;
+    protected LongAdder       unknown;
+    protected LongAdder       nanos;
+    protected AtomicLongArray latency;
+
+    /**
+     * Make zeroed metrics.
+     */
+    public TaggerMetrics()
+    {
+	sentences = new LongAdder();
+	tokens    = new LongAdder();
+	unknown   = new LongAdder();
+	nanos     = new LongAdder();
+	latency   = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Set everything back to zero.
+     */
+    public void reset()
+    {
+	sentences.reset();
+	tokens.reset();
+	unknown.reset();
+	nanos.reset();
+	for(int i = 0; i < BUCKETS; i++) {
+	    latency.set(i, 0);
+	}
+    }
+
+    /**
+     * Count one tagged sentence.
+     *
+     * @param ntokens  Number of tokens in it
+     * @param nunknown How many of them were unknown words
+     * @param elapsed  Time taken to tag it, in nanoseconds
+     */
+    public void record(int ntokens, int nunknown, long elapsed)
+    {
+	sentences.increment();
+	tokens.add(ntokens);
+	unknown.add(nunknown);
+	nanos.add(elapsed);
+	latency.incrementAndGet(bucket(elapsed));
+    }
+
+    /**
+     * Histogram bucket of a latency.
+     *
+     * @param elapsed Nanoseconds
+     * @return The bucket number
+     */
+    public static int bucket(long elapsed)
+    {
+	long micros = elapsed / 1000;
+	if(micros <= 0) {
+	    return 0;
+	}
+	return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public long getSentences()
+    {
+	return sentences.sum();
+    }
+
+    public long getTokens()
+    {
+	return tokens.sum();
+    }
+
+    public long getUnknownTokens()
+    {
+	return unknown.sum();
+    }
+
+    /**
+     * Fraction of tokens that were unknown words.
+     *
+     * @return Unknown tokens / tokens, or 0 if nothing was tagged
+     */
+    public double getUnknownRate()
+    {
+	long t = tokens.sum();
+	return (t == 0) ? 0.0 : ((double)unknown.sum()) / t;
+    }
+
+    /**
+     * Total time spent tagging, summed over threads.
+     *
+     * @return Nanoseconds
+     */
+    public long getTotalNanos()
+    {
+	return nanos.sum();
+    }
+
+    /**
+     * Number of sentences in a latency bucket.
+     *
+     * @param i The bucket number
+     * @return The count
+     */
+    public long getLatencyCount(int i)
+    {
+	return latency.get(i);
+    }
+
+    /**
+     * Approximate latency percentile, from the histogram.
+     *
+     * @param p Percentile, from 0 to 100
+     * @return Upper bound of the bucket holding it, in microseconds
+     */
+    public long getLatencyPercentile(double p)
+    {
+	return percentile(latency, p);
+    }
+
+    /**
+     * Approximate percentile of a power of two histogram.
+     *
+     * @param h Count in each bucket
+     * @param p Percentile, from 0 to 100
+     * @return Upper bound of the bucket holding it
+     */
+    public static long percentile(AtomicLongArray h, double p)
+    {
+	long total = 0;
+	for(int i = 0; i < h.length(); i++) {
+	    total += h.get(i);
+	}
+	long want = (long)Math.ceil(total * p / 100.0);
+	long seen = 0;
+	for(int i = 0; i < h.length(); i++) {
+	    seen += h.get(i);
+	    if(seen >= want && seen > 0) {
+		return 1L << (i + 1);
+	    }
+	}
+	return 0;
+    }
+
+    /**
+     * Print a summary and the non-empty latency buckets.
+     *
+     * @param out Where to print
+     */
+    public void print(PrintStream out)
+    {
+	long s = getSentences();
+	out.println("Sentences tagged: " + s);
+	out.println("Tokens tagged:    " + getTokens());
+	out.println("Unknown words:    " + getUnknownTokens() +
+		    " (" + (float)(100.0 * getUnknownRate()) + "%)");
+	if(s > 0) {
+	    out.println("Mean latency:     " + (getTotalNanos() / s / 1000) + " us");
+	    out.println("p50/p99 latency:  <" + getLatencyPercentile(50) +
+			" us / <" + getLatencyPercentile(99) + " us");
+	}
+	for(int i = 0; i < BUCKETS; i++) {
+	    long c = latency.get(i);
+	    if(c > 0) {
+		out.println("  " + ((i == 0) ? 0 : (1L << i)) + "-" + (1L << (i + 1)) + " us: " + c);
+	    }
+	}
+    }
+}
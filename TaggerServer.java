@@ -0,0 +1,432 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Serves a trained tagger over a local socket, so callers pay for
+ * starting the JVM and loading the model once rather than per request.
+ *
+ * <pre>
+ * java cs481.postag.TaggerServer [options] -port &lt;N&gt; &lt;model&gt;
+ * java cs481.postag.TaggerServer [options] -socket &lt;path&gt; &lt;model&gt;
+ * options: [-beam K] [-batch N [-window US] [-workers N]]
+ * </pre>
+ *
+ * The model is one written by -save; the tagger class is the one
+ * named in the file.  -port listens on the loopback address only,
+ * -socket on a Unix domain socket.
+ *
+ * The protocol is lines of UTF-8 text.  The client sends one sentence
+ * per line, its tokens separated by spaces or tabs.  For each line the
+ * server sends back one line with the tag of each token, separated by
+ * single spaces, in the same order; an empty line gets an empty line.
+ * Replies come in the order the lines were sent, so a client may send
+ * many lines before reading any.  A line that can't be tagged, e.g. one
+ * longer than maxLineLength characters, gets a line starting with
+ * &quot;ERROR &quot; and saying why, and the connection carries on.  The
+ * server closes its side when the client does.
+ *
+ * Each connection is handled on its own thread, a virtual thread
+ * where the JVM has them, and every connection tags with the same
+ * tagger.  With -batch, lines from all connections go through a
+ * MicroBatcher instead, which tags up to N at once after waiting at
+ * most -window microseconds for them, on -workers threads.
+ */
+public class TaggerServer
+{
+    /**
+     * Longest line a client may send; longer ones are read to their end
+     * but not kept, and get an error reply
+     */
+    public static int maxLineLength = 1 << 20;
+
+    /**
+     * The tagger every connection uses
+     */
+    protected Tagger tagger;
+    /**
+     * Listening channel, or null if not bound
+     */
+    protected ServerSocketChannel server;
+    /**
+     * Path of the Unix domain socket, to delete on close, or null
+     */
+    protected Path socketPath;
+    /**
+     * Runs one task per connection
+     */
+    protected ExecutorService connections;
+    /**
+     * Batches lines from all connections, or null to tag each alone
+     */
+    protected MicroBatcher batcher;
+
+    /**
+     * Make a server for a trained tagger.
+     *
+     * @param tagger The tagger, which may be retrained or reloaded while serving
+     */
+    public TaggerServer(Tagger tagger)
+    {
+	this.tagger = tagger;
+	connections = newConnectionExecutor();
+    }
+
+    /**
+     * An executor with a virtual thread per task, or with a cached
+     * pool of platform threads on a JVM without virtual threads.
+     *
+     * @return The executor
+     */
+    protected static ExecutorService newConnectionExecutor()
+    {
+	try {
+	    return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+	} catch(ReflectiveOperationException e) {
+	    return Executors.newCachedThreadPool();
+	}
+    }
+
+    /**
+     * Make a server that tags lines in batches.
+     *
+     * @param tagger  The tagger, which may be retrained or reloaded while serving
+     * @param batcher The batcher, which must tag with the same tagger
+     */
+    public TaggerServer(Tagger tagger, MicroBatcher batcher)
+    {
+	this(tagger);
+	this.batcher = batcher;
+    }
+
+    /**
+     * Listen on a TCP port of the loopback address.
+     *
+     * @param port The port, or 0 for any free one
+     */
+    public void bindPort(int port) throws IOException
+    {
+	server = ServerSocketChannel.open();
+	server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Listen on a Unix domain socket.
+     *
+     * @param path Where to make the socket; there must be no file there
+     */
+    public void bindSocket(String path) throws IOException
+    {
+	socketPath = Paths.get(path);
+	server     = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+	server.bind(UnixDomainSocketAddress.of(socketPath));
+    }
+
+    /**
+     * Address the server listens on.
+     *
+     * @return The address
+     */
+    public SocketAddress getAddress() throws IOException
+    {
+	return server.getLocalAddress();
+    }
+
+    /**
+     * Accept connections until closed, handing each to its own thread.
+     */
+    public void serve() throws IOException
+    {
+	try {
+	    while(true) {
+		final SocketChannel ch = server.accept();
+		connections.execute(new Runnable() {
+			public void run() {
+			    handle(ch);
+			}
+		    });
+	    }
+	} catch(ClosedChannelException e) {
+	    //close was called
+	}
+    }
+
+    /**
+     * Stop accepting connections.  Connections already open are
+     * served until their clients close them, but if lines are being
+     * batched the batcher must outlive them.
+     */
+    public void close() throws IOException
+    {
+	server.close();
+	connections.shutdown();
+	if(socketPath != null) {
+	    Files.deleteIfExists(socketPath);
+	}
+    }
+
+    /**
+     * Tag the lines of one connection until the client closes it.
+     *
+     * @param ch The connection
+     */
+    protected void handle(SocketChannel ch)
+    {
+	try {
+	    BufferedReader in      = new BufferedReader(Channels.newReader(ch, StandardCharsets.UTF_8));
+	    Writer         out     = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8));
+	    Vector         pending = new Vector();
+	    StringBuilder  line    = new StringBuilder();
+	    int            n;
+	    while((n = readLine(in, line, maxLineLength)) >= 0) {
+		//Submit every line already buffered before waiting for
+		//any, so a pipelining client fills a batch by itself
+		if(n > maxLineLength) {
+		    pending.add(CompletableFuture.failedFuture(
+			new IllegalArgumentException("Line longer than " + maxLineLength + " characters")));
+		} else {
+		    pending.add(submitLine(line.toString()));
+		}
+		if(!in.ready()) {
+		    for(int i = 0; i < pending.size(); i++) {
+			out.write(reply((CompletableFuture)pending.get(i)));
+			out.write('\n');
+		    }
+		    pending.clear();
+		    out.flush();
+		}
+	    }
+	    for(int i = 0; i < pending.size(); i++) {
+		out.write(reply((CompletableFuture)pending.get(i)));
+		out.write('\n');
+	    }
+	    out.flush();
+	} catch(IOException e) {
+	    //The client went away; nothing to tell it
+	} finally {
+	    try {
+		ch.close();
+	    } catch(IOException e) {
+	    }
+	}
+    }
+
+    /**
+     * Read a line ended by a newline, a carriage return followed by a
+     * newline, or the end of the stream, keeping at most max characters
+     * of it.
+     *
+     * @param in   Where to read
+     * @param line Set to the line, without its end
+     * @param max  Most characters to keep
+     * @return The length of the line, max + 1 if it was cut short, or
+     *         -1 at the end of the stream
+     */
+    protected static int readLine(Reader in, StringBuilder line, int max) throws IOException
+    {
+	line.setLength(0);
+	int n = 0;
+	int c;
+	while((c = in.read()) >= 0 && c != '\n') {
+	    if(n < max) {
+		line.append((char)c);
+	    }
+	    if(n <= max) {
+		n++;
+	    }
+	}
+	if(c < 0 && n == 0) {
+	    return -1;
+	}
+	if(n <= max && n > 0 && line.charAt(n - 1) == '\r') {
+	    line.setLength(--n);
+	}
+	return n;
+    }
+
+    /**
+     * Tag one line of the protocol.
+     *
+     * @param line Tokens separated by spaces or tabs
+     * @return Their tags separated by single spaces, or an error line
+     */
+    public String tagLine(String line)
+    {
+	return reply(submitLine(line));
+    }
+
+    /**
+     * The reply line for a line submitted for tagging, waiting for it
+     * if need be.
+     *
+     * @param f The future from submitLine
+     * @return The tags separated by single spaces, or &quot;ERROR &quot;
+     *         and the reason the line could not be tagged
+     */
+    protected static String reply(CompletableFuture f)
+    {
+	try {
+	    return tags((Vector)f.join());
+	} catch(CompletionException e) {
+	    return error((e.getCause() != null) ? e.getCause() : e);
+	} catch(CancellationException e) {
+	    return error(e);
+	}
+    }
+
+    /**
+     * An error reply line.
+     *
+     * @param e Why a line could not be tagged
+     * @return &quot;ERROR &quot; and the message, on one line
+     */
+    protected static String error(Throwable e)
+    {
+	String msg = (e.getMessage() != null) ? e.getMessage() : e.getClass().getName();
+	return "ERROR " + msg.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Start tagging one line of the protocol: on the batcher if there
+     * is one, otherwise right away on the calling thread.
+     *
+     * @param line Tokens separated by spaces or tabs
+     * @return A future completed with the tagged sentence
+     */
+    protected CompletableFuture submitLine(String line)
+    {
+	StringTokenizer st   = new StringTokenizer(line, " \t");
+	Vector          sent = new Vector();
+	while(st.hasMoreTokens()) {
+	    sent.add(new Token(st.nextToken()));
+	}
+	if(batcher != null) {
+	    return batcher.submit(sent);
+	}
+	try {
+	    tagger.tagSentence(sent);
+	} catch(RuntimeException e) {
+	    return CompletableFuture.failedFuture(e);
+	}
+	return CompletableFuture.completedFuture(sent);
+    }
+
+    /**
+     * The reply line for a tagged sentence.
+     *
+     * @param sent Tokens with the &quot;pos&quot; attribute
+     * @return Their tags separated by single spaces
+     */
+    protected static String tags(Vector sent)
+    {
+	StringBuilder sb = new StringBuilder();
+	for(int i = 0; i < sent.size(); i++) {
+	    if(i > 0) {
+		sb.append(' ');
+	    }
+	    sb.append(((Token)sent.get(i)).getAttrib("pos"));
+	}
+	return sb.toString();
+    }
+
+    /**
+     * Print usage and exit.
+     */
+    protected static void usage()
+    {
+	System.err.println("Wrong arguments.");
+	System.err.println("Format:  java cs481.postag.TaggerServer [options] -port <N> <model>");
+	System.err.println("         java cs481.postag.TaggerServer [options] -socket <path> <model>");
+	System.err.println("Options: [-beam K] [-batch N [-window US] [-workers N]]");
+	System.err.println("Example: java cs481.postag.TaggerServer -socket /tmp/postag.sock pos.model");
+	System.exit(1);
+    }
+
+    /**
+     * Load a model and serve it until killed.
+     *
+     * @param argv Options followed by the model file name.
+     */
+    public static void main(String[] argv) throws Exception
+    {
+	int    beam    = 0;
+	int    port    = -1;
+	String socket  = null;
+	int    batch   = 0;
+	long   window  = MicroBatcher.defaultWindowMicros;
+	int    workers = Runtime.getRuntime().availableProcessors();
+	int    a       = 0;
+
+	while(a < argv.length && argv[a].startsWith("-")) {
+	    if(argv[a].equals("-beam") && a + 1 < argv.length) {
+		beam = Integer.parseInt(argv[a + 1]);
+		a += 2;
+	    } else if(argv[a].equals("-port") && a + 1 < argv.length) {
+		port = Integer.parseInt(argv[a + 1]);
+		a += 2;
+	    } else if(argv[a].equals("-socket") && a + 1 < argv.length) {
+		socket = argv[a + 1];
+		a += 2;
+	    } else if(argv[a].equals("-batch") && a + 1 < argv.length) {
+		batch = Integer.parseInt(argv[a + 1]);
+		a += 2;
+	    } else if(argv[a].equals("-window") && a + 1 < argv.length) {
+		window = Long.parseLong(argv[a + 1]);
+		a += 2;
+	    } else if(argv[a].equals("-workers") && a + 1 < argv.length) {
+		workers = Integer.parseInt(argv[a + 1]);
+		a += 2;
+	    } else {
+		usage();
+	    }
+	}
+	if(argv.length - a != 1 || (port < 0) == (socket == null) ||
+	   batch < 0 || window < 0 || workers < 1) {
+	    usage();
+	}
+
+	String kind = ModelFile.kind(argv[a]);
+	Tagger pt   = (Tagger)Class.forName("cs481.postag." + kind).getDeclaredConstructor().newInstance();
+	pt.load(argv[a]);
+	pt.setBeam(beam);
+
+	final MicroBatcher mb = (batch > 0) ? new MicroBatcher(pt, batch, window, workers) : null;
+	final TaggerServer ts = new TaggerServer(pt, mb);
+	if(socket != null) {
+	    ts.bindSocket(socket);
+	} else {
+	    ts.bindPort(port);
+	}
+	final TaggerMetrics metrics = pt.getMetrics();
+	Runtime.getRuntime().addShutdownHook(new Thread() {
+		public void run() {
+		    try {
+			ts.close();
+		    } catch(IOException e) {
+		    }
+		    //Finish the batches in flight so the metrics count them
+		    if(mb != null) {
+			try {
+			    mb.close();
+			} catch(InterruptedException e) {
+			}
+		    }
+		    metrics.print(System.out);
+		    if(mb != null) {
+			mb.getMetrics().print(System.out);
+		    }
+		}
+	    });
+
+	System.out.println("Serving " + kind + " model on " + ts.getAddress());
+	ts.serve();
+    }
+}
@@ -0,0 +1,170 @@
+package cs481.postag;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Reads, tags and writes a corpus at the same time.
+ *
+ * <pre>
+ * Typical use:
+ * TaggingPipeline tp = new TaggingPipeline(pt, 8);
+ * CorpusReader cr = new CorpusReader(in);
+ * tp.run(cr, new CorpusWriter(out, cr));
+ * </pre>
+ *
+ * The calling thread reads sentences and hands each to a pool of
+ * tagging threads.  A writer thread takes the results in input order
+ * and writes each one as soon as it and every sentence before it are
+ * tagged.  At most queueSize sentences are in flight, so memory does
+ * not grow with the corpus.
+ */
+public class TaggingPipeline
+{
+    /**
+     * Largest number of sentences read but not yet written
+     */
+    public static int queueSize = 1024;
+
+    /**
+     * Marks the end of the queue
+     */
+    protected static final Object END = new Object();
+
+    /**
+     * The model to score with
+     */
+    protected TagModel model;
+    /**
+     * Number of tagging threads
+     */
+    protected int threads;
+    /**
+     * Where the decoders record what they did, or null
+     */
+    protected TaggerMetrics metrics;
+
+    /**
+     * Make a pipeline.
+     *
+     * @param model   The trained model to score with
+     * @param threads Number of tagging threads
+     */
+    public TaggingPipeline(TagModel model, int threads)
+    {
+	this(model, threads, null);
+    }
+
+    /**
+     * Make a pipeline that records each sentence it tags.
+     *
+     * @param model   The trained model to score with
+     * @param threads Number of tagging threads
+     * @param metrics Where to record, or null
+     */
+    public TaggingPipeline(TagModel model, int threads, TaggerMetrics metrics)
+    {
+	this.model   = model;
+	this.threads = Math.max(1, threads);
+	this.metrics = metrics;
+    }
+
+    /**
+     * Tag every sentence from in and write it to out, in order.
+     * Closes both.
+     *
+     * @param in  Untagged sentences
+     * @param out Where the tagged sentences go
+     * @return The number of sentences tagged
+     */
+    public int run(CorpusReader in, final CorpusWriter out) throws IOException
+    {
+	final ExecutorService pool     = Executors.newFixedThreadPool(threads);
+	final ThreadLocal     decoders = new ThreadLocal() {
+		protected Object initialValue() {
+		    return new ViterbiDecoder(metrics);
+		}
+	    };
+	//Futures in input order; the bound makes the reader wait for the writer
+	final BlockingQueue   queue  = new ArrayBlockingQueue(queueSize);
+	final AtomicReference failed = new AtomicReference();
+
+	Thread writer = new Thread("TaggingPipeline writer") {
+		public void run() {
+		    try {
+			for(Object f = queue.take(); f != END; f = queue.take()) {
+			    //After a failure keep draining so the reader never blocks
+			    if(failed.get() != null) {
+				continue;
+			    }
+			    try {
+				Object[] done = (Object[])((Future)f).get();
+				out.writeSentence((Vector)done[0], ((Integer)done[1]).intValue());
+			    } catch(ExecutionException e) {
+				failed.set(e.getCause());
+			    } catch(IOException e) {
+				failed.set(e);
+			    } catch(RuntimeException e) {
+				failed.set(e);
+			    }
+			}
+		    } catch(InterruptedException e) {
+			failed.compareAndSet(null, e);
+		    }
+		}
+	    };
+	writer.start();
+
+	int     n       = 0;
+	boolean written = false;
+	try {
+	    while(in.hasNext() && failed.get() == null) {
+		final Vector sent = (Vector)in.next();
+		final int    para = in.paragraph();
+
+		queue.put(pool.submit(new Callable() {
+			public Object call() {
+			    ((ViterbiDecoder)decoders.get()).tagSentence(model, sent);
+			    return new Object[] { sent, Integer.valueOf(para) };
+			}
+		    }));
+		n++;
+	    }
+	    queue.put(END);
+	    writer.join();
+	    written = failed.get() == null;
+	} catch(InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    writer.interrupt();
+	    throw new InterruptedIOException("tagging interrupted");
+	} catch(RuntimeException e) {
+	    writer.interrupt();
+	    throw e;
+	} finally {
+	    pool.shutdown();
+	    try {
+		in.close();
+	    } finally {
+		if(written) {
+		    out.close();
+		} else {
+		    //Already failing, so report that rather than this
+		    try {
+			out.close();
+		    } catch(IOException ignored) {
+		    }
+		}
+	    }
+	}
+
+	Throwable e = (Throwable)failed.get();
+	if(e instanceof IOException) {
+	    throw (IOException)e;
+	} else if(e != null) {
+	    throw new RuntimeException(e);
+	}
+	return n;
+    }
+}
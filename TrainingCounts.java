@@ -0,0 +1,393 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Word and tag counts collected from tagged sentences.
+ *
+ * <pre>
+ * Typical use:
+ * TrainingCounts c = TrainingCounts.count(training, 8);
+ * int n = c.cTag.get(c.tagVocab.lookup("NN"));
+ * </pre>
+ *
+ * Counts from separate parts of a corpus can be merged.  Merging the
+ * parts in corpus order hands out the same ids, and gives the same
+ * counts, as counting the whole corpus at once.
+ */
+public class TrainingCounts
+{
+    /**
+     * Ids of all tags (StartTag is always 0)
+     */
+    public Vocabulary tagVocab;
+    /**
+     * Ids of all words
+     */
+    public Vocabulary wordVocab;
+    /**
+     * Id of POSTag.StartTag
+     */
+    public int startTag;
+
+    /**
+     * Number of tokens
+     */
+    public int cTokens;
+    /**
+     * Occurrences of each word id
+     */
+    public IntCounts cWord;
+    /**
+     * Occurrences of each tag id (StartTag once per sentence)
+     */
+    public IntCounts cTag;
+    /**
+     * Occurrences of each Vocabulary.pair(tag, word)
+     */
+    public PairCounts cTagWord;
+    /**
+     * Occurrences of each Vocabulary.pair(previous tag, tag)
+     */
+    public PairCounts cTagTag;
+    /**
+     * Occurrences of each Vocabulary.triple(tag before previous, previous tag, tag),
+     * with StartTag standing in before the start of a sentence
+     */
+    public PairCounts cTagTagTag;
+
+    /**
+     * Make empty counts.
+     */
+    public TrainingCounts()
+    {
+	tagVocab   = new Vocabulary();
+	wordVocab  = new Vocabulary();
+	startTag   = tagVocab.intern(POSTag.StartTag);
+	cTokens    = 0;
+	cWord      = new IntCounts();
+	cTag       = new IntCounts();
+	cTagWord   = new PairCounts();
+	cTagTag    = new PairCounts();
+	cTagTagTag = new PairCounts();
+    }
+
+    /**
+     * Increment the count in an IntCounts for t.
+     *
+     * @param h1 The IntCounts to be modified
+     * @param t  The id of the field to increment
+     */
+    protected void inc1(IntCounts h1, int t)
+    {
+	h1.inc(t);
+    }
+
+    /**
+     * Increment the count in a PairCounts for [t1,t2].
+     *
+     * @param h2 The PairCounts to be modified
+     * @param t1 The id of the 1st part of the key of the field to increment
+     * @param t2 The id of the 2nd part of the key of the field to increment
+     */
+    protected void inc2(PairCounts h2, int t1, int t2)
+    {
+	h2.inc(Vocabulary.pair(t1, t2));
+    }
+
+    /**
+     * Increment the count in a PairCounts for the tag pair [tag1,tag2].
+     *
+     * @param h3   The PairCounts to be modified
+     * @param tag1 The id of the previous tag
+     * @param tag2 The id of the current tag
+     */
+    protected void inc3(PairCounts h3, int tag1, int tag2)
+    {
+	h3.inc(Vocabulary.pair(tag1, tag2));
+    }
+
+    /**
+     * Increment the count in a PairCounts for the tag triple [tag1,tag2,tag3].
+     *
+     * @param h3   The PairCounts to be modified
+     * @param tag1 The id of the tag before the previous one
+     * @param tag2 The id of the previous tag
+     * @param tag3 The id of the current tag
+     */
+    protected void inc3(PairCounts h3, int tag1, int tag2, int tag3)
+    {
+	h3.inc(Vocabulary.triple(tag1, tag2, tag3));
+    }
+
+    /**
+     * Count one sentence.
+     *
+     * @param sent Tokens with the attribute &quot;pos&quot;.
+     */
+    public void countSentence(Vector sent)
+    {
+	int curtag = startTag;
+	int previoustag = startTag;
+	int beforetag;
+	inc1(cTag, curtag);
+
+	for(Iterator k = sent.iterator(); k.hasNext(); ) {
+	    Token tok = (Token)k.next();
+	    beforetag   = previoustag;
+	    previoustag = curtag;
+
+	    curtag = tagVocab.intern((String)tok.getAttrib("pos"));
+	    inc1(cTag, curtag);
+	    int name = wordVocab.intern(tok.getName().toLowerCase());
+	    inc1(cWord, name);
+	    inc2(cTagWord, curtag, name);
+	    cTokens++;
+	    inc3(cTagTag, previoustag, curtag);
+	    inc3(cTagTagTag, beforetag, previoustag, curtag);
+	}
+    }
+
+    /**
+     * Tags an unknown word might have: those seen with words that
+     * occur only once, which are the most like words never seen.
+     *
+     * @return Tag ids in order; every tag but StartTag if no word occurs once
+     */
+    public int[] openTags()
+    {
+	boolean[] open = new boolean[tagVocab.size()];
+	int       n    = 0;
+	for(int s = 0; s < cTagWord.keys.length; s++) {
+	    long key = cTagWord.keys[s];
+	    if(key != PairCounts.EMPTY && cWord.get(Vocabulary.second(key)) == 1 &&
+	       !open[Vocabulary.first(key)]) {
+		open[Vocabulary.first(key)] = true;
+		n++;
+	    }
+	}
+	if(n == 0) {
+	    Arrays.fill(open, true);
+	    open[startTag] = false;
+	    n = open.length - 1;
+	}
+
+	int[] tags = new int[n];
+	n = 0;
+	for(int t = 0; t < open.length; t++) {
+	    if(open[t]) {
+		tags[n++] = t;
+	    }
+	}
+	return tags;
+    }
+
+    /**
+     * Count paragraphs.
+     *
+     * @param paras A list of paragraphs, each a Vector of sentences.
+     */
+    public void countParagraphs(List paras)
+    {
+	for(Iterator i = paras.iterator(); i.hasNext();) {
+	    Vector para = (Vector)i.next();
+
+	    for(Iterator j = para.iterator(); j.hasNext();) {
+		countSentence((Vector)j.next());
+	    }
+	}
+    }
+
+    /**
+     * Add another set of counts to this one.
+     *
+     * Ids in other are mapped to ids here, with new words and tags
+     * added in other's id order.
+     *
+     * @param other Counts of a later part of the corpus
+     */
+    public void merge(TrainingCounts other)
+    {
+	int[] tagMap  = new int[other.tagVocab.size()];
+	int[] wordMap = new int[other.wordVocab.size()];
+	for(int t = 0; t < tagMap.length; t++) {
+	    tagMap[t] = tagVocab.intern(other.tagVocab.get(t));
+	}
+	for(int w = 0; w < wordMap.length; w++) {
+	    wordMap[w] = wordVocab.intern(other.wordVocab.get(w));
+	}
+
+	cTokens += other.cTokens;
+	for(int t = 0; t < other.cTag.size(); t++) {
+	    cTag.add(tagMap[t], other.cTag.get(t));
+	}
+	for(int w = 0; w < other.cWord.size(); w++) {
+	    cWord.add(wordMap[w], other.cWord.get(w));
+	}
+
+	PairCounts tw = other.cTagWord;
+	for(int s = 0; s < tw.keys.length; s++) {
+	    if(tw.keys[s] != PairCounts.EMPTY) {
+		cTagWord.add(Vocabulary.pair(tagMap[Vocabulary.first(tw.keys[s])],
+					     wordMap[Vocabulary.second(tw.keys[s])]),
+			     tw.counts[s]);
+	    }
+	}
+
+	PairCounts tt = other.cTagTag;
+	for(int s = 0; s < tt.keys.length; s++) {
+	    if(tt.keys[s] != PairCounts.EMPTY) {
+		cTagTag.add(Vocabulary.pair(tagMap[Vocabulary.first(tt.keys[s])],
+					    tagMap[Vocabulary.second(tt.keys[s])]),
+			    tt.counts[s]);
+	    }
+	}
+
+	PairCounts ttt = other.cTagTagTag;
+	for(int s = 0; s < ttt.keys.length; s++) {
+	    long key = ttt.keys[s];
+	    if(key != PairCounts.EMPTY) {
+		cTagTagTag.add(Vocabulary.triple(tagMap[Vocabulary.tripleId(key, 0)],
+						 tagMap[Vocabulary.tripleId(key, 1)],
+						 tagMap[Vocabulary.tripleId(key, 2)]),
+			       ttt.counts[s]);
+	    }
+	}
+    }
+
+    /**
+     * Number of sentences read from a stream before counting them
+     * in parallel, per thread
+     */
+    public static int batchPerThread = 4096;
+
+    /**
+     * Count a training corpus, splitting it into shards counted on
+     * separate threads.
+     *
+     * @param training A vector of paragraphs which have tokens with the attribute &quot;pos&quot;.
+     * @param threads  Number of threads; 1 counts on the calling thread
+     * @return The counts, identical to counting on one thread
+     */
+    public static TrainingCounts count(Vector training, int threads)
+    {
+	if(threads <= 1) {
+	    TrainingCounts c = new TrainingCounts();
+	    c.countParagraphs(training);
+	    return c;
+	}
+
+	Vector sents = new Vector();
+	for(Iterator i = training.iterator(); i.hasNext();) {
+	    sents.addAll((Vector)i.next());
+	}
+
+	//Several shards per thread so one long shard doesn't hold up the rest
+	ExecutorService pool = Executors.newFixedThreadPool(threads);
+	try {
+	    return mergeShards(countShards(pool, sents, threads * 4), new TrainingCounts());
+	} finally {
+	    pool.shutdown();
+	}
+    }
+
+    /**
+     * Count sentences read one at a time, e.g. from a CorpusReader.
+     *
+     * Only a bounded batch of sentences is held at once, so memory use
+     * depends on the vocabulary, not on the length of the corpus.
+     *
+     * @param sents   An Iterator over sentences of tokens with the attribute &quot;pos&quot;.
+     * @param threads Number of threads; 1 counts on the calling thread
+     * @return The counts, identical to counting on one thread
+     */
+    public static TrainingCounts count(Iterator sents, int threads)
+    {
+	TrainingCounts total = new TrainingCounts();
+	if(threads <= 1) {
+	    while(sents.hasNext()) {
+		total.countSentence((Vector)sents.next());
+	    }
+	    return total;
+	}
+
+	int             size  = batchPerThread * threads;
+	Vector          batch = new Vector(size);
+	ExecutorService pool  = Executors.newFixedThreadPool(threads);
+	try {
+	    while(sents.hasNext()) {
+		batch.add(sents.next());
+		if(batch.size() == size || !sents.hasNext()) {
+		    mergeShards(countShards(pool, batch, threads), total);
+		    batch.clear();
+		}
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+	return total;
+    }
+
+    /**
+     * Count contiguous shards of a list of sentences on a pool.
+     *
+     * @param pool    The threads to count on
+     * @param sents   The sentences
+     * @param nshards Number of shards to split them into
+     * @return The counts of each shard, in order
+     */
+    protected static TrainingCounts[] countShards(ExecutorService pool, List sents, int nshards)
+    {
+	int n = sents.size();
+	nshards = Math.max(1, Math.min(n, nshards));
+
+	final TrainingCounts[] shards = new TrainingCounts[nshards];
+	Vector tasks = new Vector();
+	for(int s = 0; s < nshards; s++) {
+	    final int  shard = s;
+	    final List part  = sents.subList((int)((long)n * s / nshards),
+					     (int)((long)n * (s + 1) / nshards));
+	    tasks.add(new Callable() {
+		    public Object call() {
+			TrainingCounts c = new TrainingCounts();
+			for(Iterator i = part.iterator(); i.hasNext();) {
+			    c.countSentence((Vector)i.next());
+			}
+			shards[shard] = c;
+			return c;
+		    }
+		});
+	}
+
+	try {
+	    for(Iterator i = pool.invokeAll(tasks).iterator(); i.hasNext();) {
+		((Future)i.next()).get();
+	    }
+	} catch(InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(e);
+	} catch(ExecutionException e) {
+	    throw new RuntimeException(e.getCause());
+	}
+	return shards;
+    }
+
+    /**
+     * Merge shards into a total, in corpus order so ids come out in
+     * first-seen order.
+     *
+     * @param shards Counts of consecutive parts of the corpus
+     * @param total  Counts of everything before them
+     * @return total
+     */
+    protected static TrainingCounts mergeShards(TrainingCounts[] shards, TrainingCounts total)
+    {
+	for(int s = 0; s < shards.length; s++) {
+	    total.merge(shards[s]);
+	}
+	return total;
+    }
+}
@@ -0,0 +1,18 @@
+package cs481.postag;
+
+/**
+ * A trained second order (trigram) HMM as seen by a decoder.
+ *
+ * Before the first word of a sentence both previous tags are the
+ * start tag.
+ */
+public interface TrigramModel extends TagModel
+{
+    /**
+     * Transition probabilities given the two previous tags, indexed by
+     * (before previous * number of tags + previous) * number of tags + current.
+     *
+     * @return The transition table
+     */
+    public float[] getTrigrams();
+}
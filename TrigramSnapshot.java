@@ -0,0 +1,49 @@
+package cs481.postag;
+
+/**
+ * A trained second order model that never changes once made; see
+ * ModelSnapshot.
+ */
+public class TrigramSnapshot extends ModelSnapshot implements TrigramModel
+{
+    /**
+     * Interpolation weights of the unigram, bigram and trigram probabilities
+     */
+    protected final float[] lambda;
+    /**
+     * Probability of a tag given the two before it, indexed by
+     * (before previous * tags.length + previous) * tags.length + current
+     */
+    protected final float[] pTagTagTag;
+
+    /**
+     * Add tag trigrams to a bigram model, which is not used afterwards.
+     * Its emission cache is taken over, since rows do not depend on
+     * transitions.
+     *
+     * @param m          The bigram model
+     * @param lambda     Interpolation weights
+     * @param pTagTagTag Log probability of a tag given the two before it
+     */
+    public TrigramSnapshot(ModelSnapshot m, float[] lambda, float[] pTagTagTag)
+    {
+	super(m, m.beam);
+	this.lambda     = lambda;
+	this.pTagTagTag = pTagTagTag;
+    }
+
+    /**
+     * The same model decoded with another beam width.
+     *
+     * @param width Beam width, or 0 for exact Viterbi
+     * @return A new snapshot
+     */
+    public ModelSnapshot withBeam(int width)
+    {
+	return new TrigramSnapshot(super.withBeam(width), lambda, pTagTagTag);
+    }
+
+    public float[] getTrigrams() {
+	return pTagTagTag;
+    }
+}
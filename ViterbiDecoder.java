@@ -0,0 +1,1926 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.util.*;
+
+/**
+ * Finds the most probable tag sequence for a sentence under a TagModel.
+ *
+ * <pre>
+ * Typical use:
+ * ViterbiDecoder vd = new ViterbiDecoder();
+ * vd.tagSentence(model, sent);
+ * </pre>
+ *
+ * Scratch space grows to fit the longest sentence seen and is then
+ * reused, so a decoder allocates nothing once it has warmed up.  A
+ * decoder is not thread safe; use one per thread.
+ *
+ * Each word is only decoded over the tags the model allows it (see
+ * TagModel.fillTags), so a word seen with one or two tags costs one or
+ * two rows of the transition matrix rather than all of them.
+ *
+ * A TrigramModel is decoded over states that are pairs of tags.  Of
+ * the allowed tags, only those whose emission is within pruneWidth of
+ * the word's best, and pair states within pruneWidth of the best
+ * state, are extended.
+ *
+ * If the model has a beam width K, only the K best states survive each
+ * word.  They are picked with a min-heap kept in primitive arrays, so
+ * beam search allocates nothing either.
+ *
+ * tagSentences decodes a bigram model a batch of sentences at a time.
+ * The allowed tags of every word in the batch are packed one after
+ * another into flat arrays of slots (tag, emission, path probability,
+ * back pointer to a slot of the previous word), so the lattice of a
+ * whole batch is a few contiguous arrays walked front to back.
+ *
+ * posteriors runs forward-backward over the same lattice of allowed
+ * tags, giving P(tag | sentence) for each word.  Rather than a
+ * log-sum-exp per state, which would cost an exp for every edge, it
+ * works with probabilities: each word's emissions are exponentiated
+ * relative to their maximum, the transitions once per model, and each
+ * word's forward row is rescaled to sum to 1 with the log of the scale
+ * kept apart (Rabiner's scaling).  The inner loops are then multiply
+ * and add over primitive arrays, nothing can underflow however long
+ * the sentence, and the cost stays close to twice that of Viterbi.
+ *
+ * kbest finds the k most probable tag sequences with list Viterbi: each
+ * state of the lattice keeps its k best paths, best first, rather than
+ * one.  A state's list is merged from the lists of the states before it
+ * through the heap beam search uses, stopping early in each list since
+ * it is sorted.  The lists sit in flat arrays of k entries per state,
+ * so the cost is about k times that of Viterbi, with nothing
+ * enumerated.
+ */
+public class ViterbiDecoder
+{
+    /**
+     * Score of a state that cannot be on any path
+     */
+    public static final float IMPOSSIBLE = Float.NEGATIVE_INFINITY;
+
+    /**
+     * Log probability below the best at which trigram decoding drops a
+     * tag or pair state.  This is far more than a couple of transitions
+     * can make up, so in practice no path Viterbi would pick is lost.
+     */
+    public static float pruneWidth = 100f;
+
+    /**
+     * Most sequences kbest finds, whatever k is asked for.  The lattice
+     * keeps this many paths per state, so memory grows with it.
+     */
+    public static int maxKBest = 1000;
+
+    /**
+     * Word ids of the current sentence
+     */
+    protected int[] words;
+    /**
+     * Cached emissions of each word of the current sentence
+     */
+    protected EmissionRow[] rows;
+    /**
+     * Whether rows belongs to the words being decoded
+     */
+    protected boolean haveRows;
+    /**
+     * Best tag for each word of the current sentence
+     */
+    protected int[] best;
+    /**
+     * Edge to best path to word with tag, indexed by word * number of tags + tag
+     */
+    protected int[] backedge;
+    /**
+     * Probability of best path to the previous word with tag
+     */
+    protected float[] pathprob;
+    /**
+     * Probability of best path to the current word with tag
+     */
+    protected float[] nextprob;
+    /**
+     * Probability of each tag for the current word
+     */
+    protected float[] emit;
+    /**
+     * Where tagSentence records what it did, or null
+     */
+    protected TaggerMetrics metrics;
+
+    /**
+     * Tags considered at each word, in rows of numtags; which row
+     * holds which word is up to the decode method
+     */
+    protected int[] cand;
+    /**
+     * Number of tags in each row of cand
+     */
+    protected int[] ncand;
+    /**
+     * Probability of best path to the previous two words with tags, indexed by tag pair
+     */
+    protected float[] pairprob;
+    /**
+     * Probability of best path to the current pair of tags
+     */
+    protected float[] nextpair;
+    /**
+     * Tag before the pair on the best path to word with a tag pair,
+     * indexed by word * numtags^2 + pair
+     */
+    protected int[] pairback;
+
+    /**
+     * Number of words packed into one batch by tagSentences
+     */
+    public static int batchTokens = 4096;
+
+    /**
+     * First word of each sentence of the batch, plus the end of the last
+     */
+    protected int[] sentStart;
+    /**
+     * Word ids of the batch
+     */
+    protected int[] batchWords;
+    /**
+     * First slot of each word of the batch, plus the end of the last
+     */
+    protected int[] slotStart;
+    /**
+     * Slot after the last one of each word still in the beam
+     */
+    protected int[] slotEnd;
+    /**
+     * Tag of each slot
+     */
+    protected int[] slotTag;
+    /**
+     * Emission probability of each slot's tag
+     */
+    protected float[] slotEmit;
+    /**
+     * Probability of the best path to each slot
+     */
+    protected float[] slotProb;
+    /**
+     * Slot of the previous word on the best path to each slot
+     */
+    protected int[] slotBack;
+
+    /**
+     * Forward probabilities of the current sentence, each word's row
+     * scaled to sum to 1, indexed by word * number of states + state
+     */
+    protected double[] alpha;
+    /**
+     * Backward probabilities, scaled by the same factors as alpha
+     */
+    protected double[] beta;
+    /**
+     * Emission probabilities of each word relative to its best, indexed
+     * by word * number of tags + tag
+     */
+    protected double[] expEmit;
+    /**
+     * Sum each word's forward row had before it was scaled
+     */
+    protected double[] scale;
+    /**
+     * Weight of each tag of the next word in the backward pass
+     */
+    protected double[] weight;
+    /**
+     * Posteriors of the sentence tagSentenceConfidence is tagging
+     */
+    protected float[] gamma;
+    /**
+     * exp of the transitions (trigrams for a TrigramModel) of the
+     * model last given to posteriors
+     */
+    protected double[] expTrans;
+    /**
+     * The log probabilities expTrans was made from
+     */
+    protected float[] expTransOf;
+
+    /**
+     * First kbest state of each word, plus the end of the last
+     */
+    protected int[] kbStart;
+    /**
+     * Tag of the word that each kbest state ends in
+     */
+    protected int[] kbTag;
+    /**
+     * Number of paths kept to each kbest state
+     */
+    protected int[] kbCount;
+    /**
+     * Log probabilities of the paths kept to each kbest state, best
+     * first, indexed by state * k + rank
+     */
+    protected float[] kbProb;
+    /**
+     * Entry (state * k + rank) of the previous word on each kept path,
+     * or -1 at the first word
+     */
+    protected int[] kbBack;
+
+    /**
+     * Min-heap of the best states at a word, by probability
+     */
+    protected float[] heapProb;
+    /**
+     * State of each heap entry
+     */
+    protected int[] heapState;
+
+    /**
+     * Make a decoder with room for short sentences.
+     */
+    public ViterbiDecoder()
+    {
+	this(null);
+    }
+
+    /**
+     * Make a decoder that records each sentence it tags.
+     *
+     * @param metrics Where to record, or null
+     */
+    public ViterbiDecoder(TaggerMetrics metrics)
+    {
+	this.metrics = metrics;
+	words    = new int[0];
+	best     = new int[0];
+	rows     = new EmissionRow[0];
+	backedge = new int[0];
+	pathprob = new float[0];
+	nextprob = new float[0];
+	emit     = new float[0];
+	cand     = new int[0];
+	ncand    = new int[0];
+	pairprob = new float[0];
+	nextpair = new float[0];
+	pairback = new int[0];
+	heapProb  = new float[0];
+	heapState = new int[0];
+	alpha      = new double[0];
+	beta       = new double[0];
+	expEmit    = new double[0];
+	scale      = new double[0];
+	weight     = new double[0];
+	gamma      = new float[0];
+	kbStart    = new int[1];
+	kbTag      = new int[0];
+	kbCount    = new int[0];
+	kbProb     = new float[0];
+	kbBack     = new int[0];
+	sentStart  = new int[1];
+	batchWords = new int[0];
+	slotStart  = new int[1];
+	slotEnd    = new int[0];
+	slotTag    = new int[0];
+	slotEmit   = new float[0];
+	slotProb   = new float[0];
+	slotBack   = new int[0];
+    }
+
+    /**
+     * Grow the scratch space if needed.
+     *
+     * @param len     Number of words
+     * @param numtags Number of tags
+     */
+    protected void ensureCapacity(int len, int numtags)
+    {
+	if(words.length < len) {
+	    int n = Math.max(len, words.length * 2);
+	    words = new int[n];
+	    best  = new int[n];
+	    rows  = new EmissionRow[n];
+	}
+	if(ncand.length < words.length + 2 || cand.length < (words.length + 2) * numtags) {
+	    ncand = new int[words.length + 2];
+	    cand  = new int[(words.length + 2) * numtags];
+	}
+	if(pathprob.length < numtags) {
+	    pathprob = new float[numtags];
+	    nextprob = new float[numtags];
+	    emit     = new float[numtags];
+	}
+	if(backedge.length < words.length * numtags) {
+	    backedge = new int[words.length * numtags];
+	}
+    }
+
+    /**
+     * Grow the heap if needed.
+     *
+     * @param beam Beam width
+     */
+    protected void ensureHeap(int beam)
+    {
+	if(heapProb.length < beam) {
+	    heapProb  = new float[beam];
+	    heapState = new int[beam];
+	}
+    }
+
+    /**
+     * Offer a state to the heap of the best k seen so far.
+     *
+     * @param size Number of states in the heap
+     * @param k    Most states to keep
+     * @param p    Probability of the state
+     * @param s    The state
+     * @return The new number of states in the heap
+     */
+    protected int offer(int size, int k, float p, int s)
+    {
+	int i;
+	if(size < k) {
+	    //Sift up from a new leaf
+	    i = size++;
+	    while(i > 0 && heapProb[(i - 1) >> 1] > p) {
+		heapProb[i]  = heapProb[(i - 1) >> 1];
+		heapState[i] = heapState[(i - 1) >> 1];
+		i = (i - 1) >> 1;
+	    }
+	} else if(p > heapProb[0]) {
+	    //Replace the worst and sift down
+	    i = 0;
+	    for(int c = 1; c < size; c = 2 * i + 1) {
+		if(c + 1 < size && heapProb[c + 1] < heapProb[c]) {
+		    c++;
+		}
+		if(heapProb[c] >= p) {
+		    break;
+		}
+		heapProb[i]  = heapProb[c];
+		heapState[i] = heapState[c];
+		i = c;
+	    }
+	} else {
+	    return size;
+	}
+	heapProb[i]  = p;
+	heapState[i] = s;
+	return size;
+    }
+
+    /**
+     * Sort the heap best first, as heapsort does, leaving it no longer
+     * a heap.
+     *
+     * @param size Number of states in the heap
+     */
+    protected void sortHeap(int size)
+    {
+	for(int n = size - 1; n > 0; n--) {
+	    //Move the worst to the end, and sift the last leaf down
+	    //from the root of what is left
+	    float p = heapProb[n];
+	    int   s = heapState[n];
+	    heapProb[n]  = heapProb[0];
+	    heapState[n] = heapState[0];
+
+	    int i = 0;
+	    for(int c = 1; c < n; c = 2 * i + 1) {
+		if(c + 1 < n && heapProb[c + 1] < heapProb[c]) {
+		    c++;
+		}
+		if(heapProb[c] >= p) {
+		    break;
+		}
+		heapProb[i]  = heapProb[c];
+		heapState[i] = heapState[c];
+		i = c;
+	    }
+	    heapProb[i]  = p;
+	    heapState[i] = s;
+	}
+    }
+
+    /**
+     * Cut a row of cand down to the beam best tags by probability.
+     *
+     * @param prob    Probability of each tag
+     * @param row     Row of cand
+     * @param numtags Number of tags
+     * @param beam    Beam width
+     * @return The new number of tags in the row
+     */
+    protected int keepBest(float[] prob, int row, int numtags, int beam)
+    {
+	int off  = row * numtags;
+	int n    = ncand[row];
+	int size = 0;
+	for(int b = 0; b < n; b++) {
+	    int j = cand[off + b];
+	    if(prob[j] != IMPOSSIBLE) {
+		size = offer(size, beam, prob[j], j);
+	    }
+	}
+	System.arraycopy(heapState, 0, cand, off, size);
+	ncand[row] = size;
+	return size;
+    }
+
+    /**
+     * Grow the trigram scratch space if needed.
+     *
+     * @param len     Number of words
+     * @param numtags Number of tags
+     */
+    protected void ensurePairCapacity(int len, int numtags)
+    {
+	ensureCapacity(len, numtags);
+	int n     = words.length;
+	int pairs = numtags * numtags;
+	if(pairprob.length < pairs) {
+	    pairprob = new float[pairs];
+	    nextpair = new float[pairs];
+	}
+	if(pairback.length < n * pairs) {
+	    pairback = new int[n * pairs];
+	}
+    }
+
+    /**
+     * Tags a sentence by setting the &quot;pos&quot; attribute in the Tokens.
+     *
+     * @param model The model to score with
+     * @param sent  The sentence to be tagged.
+     */
+    public void tagSentence(TagModel model, Vector sent)
+    {
+	int len = sent.size();
+	if(len == 0) {
+	    return;
+	}
+
+	model = model.getSnapshot();
+
+	long     t0   = (metrics == null) ? 0 : System.nanoTime();
+	String[] tags = model.getTags();
+	ensureCapacity(len, tags.length);
+	int unknown = lookup(model, sent, len);
+
+	haveRows = (model.getEmissionCache() != null);
+	decode(model, words, len, best);
+	haveRows = false;
+
+	for(int i = 0; i < len; i++) {
+	    ((Token)sent.get(i)).putAttrib("pos", tags[best[i]]);
+	}
+
+	if(metrics != null) {
+	    metrics.record(len, unknown, System.nanoTime() - t0);
+	}
+    }
+
+    /**
+     * Tags a sentence like tagSentence, and finds how sure the model
+     * is of each tag: its posterior probability given the whole
+     * sentence.  The posteriors ignore any beam.
+     *
+     * @param model The model to score with
+     * @param sent  The sentence to be tagged.
+     * @return P(tag | sentence) of the tag given to each word
+     */
+    public float[] tagSentenceConfidence(TagModel model, Vector sent)
+    {
+	int     len  = sent.size();
+	float[] conf = new float[len];
+	if(len == 0) {
+	    return conf;
+	}
+
+	model = model.getSnapshot();
+
+	long     t0      = (metrics == null) ? 0 : System.nanoTime();
+	String[] tags    = model.getTags();
+	int      numtags = tags.length;
+	ensureCapacity(len, numtags);
+	if(gamma.length < len * numtags) {
+	    gamma = new float[Math.max(len * numtags, gamma.length * 2)];
+	}
+	int unknown = lookup(model, sent, len);
+
+	haveRows = (model.getEmissionCache() != null);
+	decode(model, words, len, best);
+	posteriors(model, words, len, gamma);
+	haveRows = false;
+
+	for(int i = 0; i < len; i++) {
+	    ((Token)sent.get(i)).putAttrib("pos", tags[best[i]]);
+	    conf[i] = gamma[i * numtags + best[i]];
+	}
+
+	if(metrics != null) {
+	    metrics.record(len, unknown, System.nanoTime() - t0);
+	}
+	return conf;
+    }
+
+    /**
+     * Finds the k most probable ways of tagging a sentence, without
+     * setting any attribute.  The model's beam is not used.
+     *
+     * @param model The model to score with
+     * @param sent  The sentence
+     * @param k     Most sequences to find; no more than maxKBest are
+     * @return The sequences, best first; fewer than k if the sentence
+     *         has fewer possible taggings, and none if it is empty
+     */
+    public TagSequence[] tagSentenceKBest(TagModel model, Vector sent, int k)
+    {
+	int len = sent.size();
+	if(len == 0 || k <= 0) {
+	    return new TagSequence[0];
+	}
+
+	model = model.getSnapshot();
+
+	long     t0   = (metrics == null) ? 0 : System.nanoTime();
+	String[] tags = model.getTags();
+	k = kbestLimit(k, tags.length, len);
+	ensureCapacity(len, tags.length);
+	int unknown = lookup(model, sent, len);
+
+	int[]   out    = new int[k * len];
+	float[] scores = new float[k];
+	haveRows = (model.getEmissionCache() != null);
+	int n = kbest(model, words, len, k, out, scores);
+	haveRows = false;
+
+	TagSequence[] seqs = new TagSequence[n];
+	for(int h = 0; h < n; h++) {
+	    String[] t = new String[len];
+	    for(int i = 0; i < len; i++) {
+		t[i] = tags[out[h * len + i]];
+	    }
+	    seqs[h] = new TagSequence(t, scores[h]);
+	}
+
+	if(metrics != null) {
+	    metrics.record(len, unknown, System.nanoTime() - t0);
+	}
+	return seqs;
+    }
+
+    /**
+     * Fill words, and rows if the model has an emission cache, for a
+     * sentence.
+     *
+     * @param model The model to score with
+     * @param sent  The sentence
+     * @param len   Number of words in it
+     * @return How many of them are unknown words
+     */
+    protected int lookup(TagModel model, Vector sent, int len)
+    {
+	EmissionCache cache   = model.getEmissionCache();
+	int           unknown = 0;
+	for(int i = 0; i < len; i++) {
+	    String name = ((Token)sent.get(i)).getName();
+	    if(cache != null) {
+		rows[i]  = cache.get(name);
+		words[i] = rows[i].word;
+	    } else {
+		words[i] = model.lookupWord(name.toLowerCase());
+	    }
+	    if(words[i] < 0) {
+		unknown++;
+	    }
+	}
+	return unknown;
+    }
+
+    /**
+     * Tags sentences by setting the &quot;pos&quot; attribute in the
+     * Tokens, batchTokens words at a time.  Each sentence gets the tags
+     * tagSentence would give it.  A TrigramModel is tagged one sentence
+     * at a time.
+     *
+     * @param model The model to score with
+     * @param sents The sentences to be tagged
+     * @param lo    Index in sents of the first sentence
+     * @param hi    Index in sents after the last sentence
+     */
+    public void tagSentences(TagModel model, Vector[] sents, int lo, int hi)
+    {
+	model = model.getSnapshot();
+	if(model instanceof TrigramModel) {
+	    for(int s = lo; s < hi; s++) {
+		tagSentence(model, sents[s]);
+	    }
+	    return;
+	}
+
+	int s = lo;
+	while(s < hi) {
+	    //At least one sentence, however long
+	    int e      = s + 1;
+	    int ntoken = sents[s].size();
+	    while(e < hi && ntoken + sents[e].size() <= batchTokens) {
+		ntoken += sents[e++].size();
+	    }
+	    tagBatch(model, sents, s, e, ntoken);
+	    s = e;
+	}
+    }
+
+    /**
+     * Look up, decode and tag one batch of sentences.
+     *
+     * @param model  The model to score with
+     * @param sents  The sentences to be tagged
+     * @param lo     Index in sents of the first sentence of the batch
+     * @param hi     Index in sents after the last sentence of the batch
+     * @param ntoken Number of words in the batch
+     */
+    protected void tagBatch(TagModel model, Vector[] sents, int lo, int hi, int ntoken)
+    {
+	long          t0      = (metrics == null) ? 0 : System.nanoTime();
+	String[]      tags    = model.getTags();
+	int           numtags = tags.length;
+	int           start   = model.getStartTag();
+	float[]       trans   = model.getTransitions();
+	int           beam    = model.getBeam();
+	EmissionCache cache   = model.getEmissionCache();
+
+	if(sentStart.length < hi - lo + 1) {
+	    sentStart = new int[Math.max(hi - lo + 1, sentStart.length * 2)];
+	}
+	if(batchWords.length < ntoken) {
+	    batchWords = new int[Math.max(ntoken, batchWords.length * 2)];
+	    slotStart  = new int[batchWords.length + 1];
+	    slotEnd    = new int[batchWords.length];
+	}
+	if(emit.length < numtags) {
+	    emit = new float[numtags];
+	}
+	if(cand.length < numtags || ncand.length < numtags) {
+	    cand  = new int[Math.max(cand.length, numtags)];
+	    ncand = new int[Math.max(ncand.length, numtags)];
+	}
+	ensureHeap(beam);
+
+	//Pack the words and their slots
+	int w = 0;
+	for(int s = lo; s < hi; s++) {
+	    sentStart[s - lo] = w;
+	    Vector sent = sents[s];
+	    for(int i = 0; i < sent.size(); i++, w++) {
+		String      name = ((Token)sent.get(i)).getName();
+		EmissionRow r    = null;
+		if(cache != null) {
+		    r             = cache.get(name);
+		    batchWords[w] = r.word;
+		} else {
+		    batchWords[w] = model.lookupWord(name.toLowerCase());
+		}
+		slotStart[w + 1] = slotStart[w] + addSlots(model, r, batchWords[w], slotStart[w], numtags, start);
+		slotEnd[w]       = slotStart[w + 1];
+	    }
+	}
+	sentStart[hi - lo] = w;
+
+	for(int s = lo; s < hi; s++) {
+	    int first = sentStart[s - lo];
+	    int end   = sentStart[s - lo + 1];
+	    if(first == end) {
+		continue;
+	    }
+
+	    //First word: only the start tag can precede it
+	    int ts = start * numtags;
+	    for(int b = slotStart[first]; b < slotStart[first + 1]; b++) {
+		slotProb[b] = trans[ts + slotTag[b]] + slotEmit[b];
+		slotBack[b] = -1;
+	    }
+	    if(beam > 0) {
+		slotEnd[first] = keepBestSlots(slotStart[first], slotEnd[first], beam);
+	    }
+
+	    //Loop over previous slots, then this word's, so the transition
+	    //matrix is read one row at a time and the slots front to back
+	    for(int i = first + 1; i < end; i++) {
+		int lo2 = slotStart[i];
+		int hi2 = slotEnd[i];
+		for(int b = lo2; b < hi2; b++) {
+		    slotProb[b] = IMPOSSIBLE;
+		}
+		for(int a = slotStart[i - 1]; a < slotEnd[i - 1]; a++) {
+		    float prev = slotProb[a];
+		    if(prev == IMPOSSIBLE) {
+			continue;
+		    }
+		    int tk = slotTag[a] * numtags;
+		    for(int b = lo2; b < hi2; b++) {
+			float test = prev + trans[tk + slotTag[b]];
+			if(test > slotProb[b]) {
+			    slotProb[b] = test;
+			    slotBack[b] = a;
+			}
+		    }
+		}
+		for(int b = lo2; b < hi2; b++) {
+		    slotProb[b] += slotEmit[b];
+		}
+		if(beam > 0) {
+		    slotEnd[i] = keepBestSlots(lo2, hi2, beam);
+		}
+	    }
+
+	    //Find final slot and follow back pointers to the first word
+	    int   last = slotStart[end - 1];
+	    float max  = IMPOSSIBLE;
+	    for(int b = last; b < slotEnd[end - 1]; b++) {
+		if(slotProb[b] > max) {
+		    max  = slotProb[b];
+		    last = b;
+		}
+	    }
+	    Vector sent = sents[s];
+	    for(int i = end - 1; i >= first; i--) {
+		((Token)sent.get(i - first)).putAttrib("pos", tags[slotTag[last]]);
+		last = slotBack[last];
+	    }
+	}
+
+	if(metrics != null) {
+	    //Each sentence is charged its share of the batch's time
+	    long elapsed = System.nanoTime() - t0;
+	    for(int s = lo; s < hi; s++) {
+		int first   = sentStart[s - lo];
+		int end     = sentStart[s - lo + 1];
+		int unknown = 0;
+		for(int i = first; i < end; i++) {
+		    if(batchWords[i] < 0) {
+			unknown++;
+		    }
+		}
+		metrics.record(end - first, unknown, elapsed * (end - first) / Math.max(1, ntoken));
+	    }
+	}
+    }
+
+    /**
+     * Put the tags a word may have, and their emissions, in the slots
+     * from at, growing the slot arrays if needed.  The tags are those
+     * candidates would give the word.
+     *
+     * @param model   The model to score with
+     * @param r       The word's cached row, or null
+     * @param word    The word's id
+     * @param at      First slot to fill
+     * @param numtags Number of tags
+     * @param start   Id of the start tag, which is never allowed
+     * @return The number of slots filled
+     */
+    protected int addSlots(TagModel model, EmissionRow r, int word, int at, int numtags, int start)
+    {
+	if(slotTag.length < at + numtags) {
+	    int n = Math.max(at + numtags, slotTag.length * 2);
+	    slotTag  = Arrays.copyOf(slotTag, n);
+	    slotEmit = Arrays.copyOf(slotEmit, n);
+	    slotProb = new float[n];
+	    slotBack = new int[n];
+	}
+
+	int m = 0;
+	if(r != null) {
+	    for(int b = 0; b < r.tags.length; b++) {
+		if(r.tags[b] != start) {
+		    slotTag[at + m]    = r.tags[b];
+		    slotEmit[at + m++] = r.probs[b];
+		}
+	    }
+	    if(m > 0) {
+		return m;
+	    }
+	} else {
+	    int n = model.fillTags(word, cand, 0);
+	    for(int b = 0; b < n; b++) {
+		if(cand[b] != start) {
+		    slotTag[at + m++] = cand[b];
+		}
+	    }
+	}
+
+	//Fall back on every tag if none is left
+	if(m == 0) {
+	    for(int j = 0; j < numtags; j++) {
+		if(j != start) {
+		    slotTag[at + m++] = j;
+		}
+	    }
+	}
+	model.fillEmissions(word, emit);
+	for(int b = 0; b < m; b++) {
+	    slotEmit[at + b] = emit[slotTag[at + b]];
+	}
+	return m;
+    }
+
+    /**
+     * Keep only the beam best of a word's slots, moved to the front in
+     * the order keepBest leaves a row of cand, so ties are broken the
+     * same way as by decode.
+     *
+     * @param lo   First slot of the word
+     * @param hi   Slot after the word's last
+     * @param beam Beam width
+     * @return The slot after the last one kept
+     */
+    protected int keepBestSlots(int lo, int hi, int beam)
+    {
+	if(hi - lo <= beam) {
+	    return hi;
+	}
+	int size = 0;
+	for(int b = lo; b < hi; b++) {
+	    if(slotProb[b] != IMPOSSIBLE) {
+		size = offer(size, beam, slotProb[b], b);
+	    }
+	}
+
+	//Gather first, since a kept slot may be moved over another
+	for(int h = 0; h < size; h++) {
+	    cand[h]  = slotTag[heapState[h]];
+	    emit[h]  = slotEmit[heapState[h]];
+	    ncand[h] = slotBack[heapState[h]];
+	}
+	for(int h = 0; h < size; h++) {
+	    slotTag[lo + h]  = cand[h];
+	    slotEmit[lo + h] = emit[h];
+	    slotBack[lo + h] = ncand[h];
+	    slotProb[lo + h] = heapProb[h];
+	}
+	return lo + size;
+    }
+
+    /**
+     * Find the most probable tags for a sequence of word ids.
+     *
+     * @param model The model to score with
+     * @param in    Word ids from model.lookupWord
+     * @param len   Number of words in in to use
+     * @param out   Where to put the tag id of each word
+     * @return The log probability of the best path
+     */
+    public float decode(TagModel model, int[] in, int len, int[] out)
+    {
+	model = model.getSnapshot();
+	if(model instanceof TrigramModel) {
+	    return decodeTrigram((TrigramModel)model, in, len, out);
+	}
+
+	int     numtags = model.getTags().length;
+	int     start   = model.getStartTag();
+	float[] trans   = model.getTransitions();
+	int     beam    = model.getBeam();
+
+	ensureCapacity(len, numtags);
+	ensureHeap(beam);
+	if(len == 0) {
+	    return 0f;
+	}
+
+	//Row i of cand holds the tags of word i.  First word: only the
+	//start tag can precede it
+	int n1 = candidates(model, in, 0, 0, numtags, start);
+	for(int b = 0; b < n1; b++) {
+	    int j = cand[b];
+	    pathprob[j] = trans[start * numtags + j] + emit[j];
+	}
+	if(beam > 0 && n1 > beam) {
+	    n1 = keepBest(pathprob, 0, numtags, beam);
+	}
+
+	for(int i = 1; i < len; i++) {
+	    int row = i * numtags;
+	    int c1  = row - numtags;
+	    int n2  = candidates(model, in, i, i, numtags, start);
+	    for(int b = 0; b < n2; b++) {
+		nextprob[cand[row + b]] = IMPOSSIBLE;
+	    }
+
+	    //Loop over previous tags, then this word's tags, so the
+	    //transition matrix is read one row at a time
+	    for(int a = 0; a < n1; a++) {
+		int   k    = cand[c1 + a];
+		float prev = pathprob[k];
+		if(prev == IMPOSSIBLE) {
+		    continue;
+		}
+		int tk = k * numtags;
+		for(int b = 0; b < n2; b++) {
+		    int   j    = cand[row + b];
+		    float test = prev + trans[tk + j];
+		    if(test > nextprob[j]) {
+			nextprob[j]       = test;
+			backedge[row + j] = k;
+		    }
+		}
+	    }
+
+	    for(int b = 0; b < n2; b++) {
+		nextprob[cand[row + b]] += emit[cand[row + b]];
+	    }
+	    if(beam > 0 && n2 > beam) {
+		n2 = keepBest(nextprob, i, numtags, beam);
+	    }
+
+	    float[] swap = pathprob;
+	    pathprob = nextprob;
+	    nextprob = swap;
+	    n1       = n2;
+	}
+
+	//Find final tag
+	float max     = IMPOSSIBLE;
+	int   prevtag = cand[(len - 1) * numtags];
+	for(int b = 0; b < n1; b++) {
+	    int j = cand[(len - 1) * numtags + b];
+	    if(pathprob[j] > max) {
+		max     = pathprob[j];
+		prevtag = j;
+	    }
+	}
+
+	//Follow back edges to the first word
+	for(int i = len - 1; i >= 0; i--) {
+	    out[i]  = prevtag;
+	    prevtag = backedge[i * numtags + prevtag];
+	}
+	return max;
+    }
+
+    /**
+     * Grow the forward-backward scratch space if needed.
+     *
+     * @param len     Number of words
+     * @param numtags Number of tags
+     * @param states  Number of states per word
+     */
+    protected void ensureForwardBackward(int len, int numtags, int states)
+    {
+	if(alpha.length < len * states) {
+	    alpha = new double[Math.max(len * states, alpha.length * 2)];
+	    beta  = new double[alpha.length];
+	}
+	if(expEmit.length < len * numtags) {
+	    expEmit = new double[Math.max(len * numtags, expEmit.length * 2)];
+	}
+	if(scale.length < len) {
+	    scale = new double[Math.max(len, scale.length * 2)];
+	}
+	if(weight.length < numtags) {
+	    weight = new double[numtags];
+	}
+    }
+
+    /**
+     * exp of a table of log probabilities, made once per model.
+     *
+     * @param logs The log probabilities
+     * @return The probabilities
+     */
+    protected double[] exp(float[] logs)
+    {
+	if(expTransOf != logs) {
+	    expTrans = new double[logs.length];
+	    for(int i = 0; i < logs.length; i++) {
+		expTrans[i] = Math.exp(logs[i]);
+	    }
+	    expTransOf = logs;
+	}
+	return expTrans;
+    }
+
+    /**
+     * Move the emissions candidates left in emit into a word's row of
+     * expEmit as probabilities relative to the best of them.
+     *
+     * @param off Index in expEmit of the word's row
+     * @param row Index in cand of the word's tags
+     * @param n   Number of tags
+     * @return The log of the best emission, which the row is divided by
+     */
+    protected double shiftEmissions(int off, int row, int n)
+    {
+	float max = IMPOSSIBLE;
+	for(int b = 0; b < n; b++) {
+	    max = Math.max(max, emit[cand[row + b]]);
+	}
+	for(int b = 0; b < n; b++) {
+	    int j = cand[row + b];
+	    expEmit[off + j] = (max == IMPOSSIBLE) ? 1.0 : Math.exp(emit[j] - max);
+	}
+	return max;
+    }
+
+    /**
+     * Find P(tag | sentence) for each word of a sequence of word ids by
+     * forward-backward, over the tags decode would consider.
+     *
+     * @param model The model to score with
+     * @param in    Word ids from model.lookupWord
+     * @param len   Number of words in in to use
+     * @param out   Where to put the posteriors, indexed by word * number
+     *              of tags + tag; tags a word may not have get 0
+     * @return The log probability of the sentence, summed over all paths
+     */
+    public float posteriors(TagModel model, int[] in, int len, float[] out)
+    {
+	model = model.getSnapshot();
+	if(model instanceof TrigramModel) {
+	    return posteriorsTrigram((TrigramModel)model, in, len, out);
+	}
+
+	int      numtags = model.getTags().length;
+	int      start   = model.getStartTag();
+	double[] trans   = exp(model.getTransitions());
+
+	ensureCapacity(len, numtags);
+	ensureForwardBackward(len, numtags, numtags);
+	Arrays.fill(out, 0, len * numtags, 0f);
+	if(len == 0) {
+	    return 0f;
+	}
+
+	//Forward.  Row i of cand, alpha and expEmit is word i.  First
+	//word: only the start tag can precede it
+	double logp = 0;
+	int    n1   = candidates(model, in, 0, 0, numtags, start);
+	logp += shiftEmissions(0, 0, n1);
+	for(int b = 0; b < n1; b++) {
+	    int j = cand[b];
+	    alpha[j] = trans[start * numtags + j] * expEmit[j];
+	}
+	logp += rescale(0, n1, 0);
+
+	for(int i = 1; i < len; i++) {
+	    int row = i * numtags;
+	    int c1  = row - numtags;
+	    int n2  = candidates(model, in, i, i, numtags, start);
+	    logp += shiftEmissions(row, row, n2);
+	    for(int b = 0; b < n2; b++) {
+		alpha[row + cand[row + b]] = 0.0;
+	    }
+
+	    //Loop over previous tags, then this word's tags, so the
+	    //transition matrix is read one row at a time
+	    for(int a = 0; a < n1; a++) {
+		int    k    = cand[c1 + a];
+		double prev = alpha[c1 + k];
+		if(prev == 0.0) {
+		    continue;
+		}
+		int tk = k * numtags;
+		for(int b = 0; b < n2; b++) {
+		    int j = cand[row + b];
+		    alpha[row + j] += prev * trans[tk + j];
+		}
+	    }
+	    for(int b = 0; b < n2; b++) {
+		alpha[row + cand[row + b]] *= expEmit[row + cand[row + b]];
+	    }
+	    logp += rescale(row, n2, i);
+	    n1 = n2;
+	}
+
+	//Backward, scaled by the same sums
+	int last = (len - 1) * numtags;
+	for(int b = 0; b < n1; b++) {
+	    beta[last + cand[last + b]] = 1.0;
+	}
+	for(int i = len - 2; i >= 0; i--) {
+	    int row = i * numtags;
+	    int r2  = row + numtags;
+	    int n2  = ncand[i + 1];
+	    for(int b = 0; b < n2; b++) {
+		int j = cand[r2 + b];
+		weight[j] = expEmit[r2 + j] * beta[r2 + j] / scale[i + 1];
+	    }
+	    for(int a = 0; a < ncand[i]; a++) {
+		int    k   = cand[row + a];
+		int    tk  = k * numtags;
+		double sum = 0.0;
+		for(int b = 0; b < n2; b++) {
+		    int j = cand[r2 + b];
+		    sum += trans[tk + j] * weight[j];
+		}
+		beta[row + k] = sum;
+	    }
+	}
+
+	for(int i = 0; i < len; i++) {
+	    int    row = i * numtags;
+	    double sum = 0.0;
+	    for(int b = 0; b < ncand[i]; b++) {
+		int j = cand[row + b];
+		sum += alpha[row + j] * beta[row + j];
+	    }
+	    for(int b = 0; b < ncand[i]; b++) {
+		int j = cand[row + b];
+		out[row + j] = (sum > 0) ? (float)(alpha[row + j] * beta[row + j] / sum) : 0f;
+	    }
+	}
+	return (float)logp;
+    }
+
+    /**
+     * Add to counts the expected number of times each transition is
+     * taken in the sentence posteriors last ran on, which must have
+     * been under the same bigram model.  With the posteriors, these
+     * are the expected counts of a Baum-Welch E-step.
+     *
+     * @param model  The model posteriors was given
+     * @param len    Number of words posteriors was given
+     * @param counts Where to add, indexed by previous * number of tags + tag
+     */
+    public void addTransitions(TagModel model, int len, double[] counts)
+    {
+	int      numtags = model.getTags().length;
+	int      start   = model.getStartTag();
+	double[] trans   = exp(model.getTransitions());
+	if(len == 0) {
+	    return;
+	}
+
+	//Into the first word, only from the start tag
+	double sum = 0.0;
+	for(int b = 0; b < ncand[0]; b++) {
+	    sum += alpha[cand[b]] * beta[cand[b]];
+	}
+	for(int b = 0; b < ncand[0]; b++) {
+	    int j = cand[b];
+	    if(sum > 0) {
+		counts[start * numtags + j] += alpha[j] * beta[j] / sum;
+	    }
+	}
+
+	//P(k then j) is alpha(k) trans(k, j) emission(j) beta(j), over
+	//the same summed for every edge between the two words
+	for(int i = 1; i < len; i++) {
+	    int row = i * numtags;
+	    int c1  = row - numtags;
+	    int n1  = ncand[i - 1];
+	    int n2  = ncand[i];
+	    for(int b = 0; b < n2; b++) {
+		int j = cand[row + b];
+		weight[j] = expEmit[row + j] * beta[row + j];
+	    }
+
+	    sum = 0.0;
+	    for(int a = 0; a < n1; a++) {
+		int    k  = cand[c1 + a];
+		int    tk = k * numtags;
+		double s  = 0.0;
+		for(int b = 0; b < n2; b++) {
+		    int j = cand[row + b];
+		    s += trans[tk + j] * weight[j];
+		}
+		sum += alpha[c1 + k] * s;
+	    }
+	    if(sum == 0.0) {
+		continue;
+	    }
+
+	    for(int a = 0; a < n1; a++) {
+		int    k    = cand[c1 + a];
+		int    tk   = k * numtags;
+		double prev = alpha[c1 + k] / sum;
+		if(prev == 0.0) {
+		    continue;
+		}
+		for(int b = 0; b < n2; b++) {
+		    int j = cand[row + b];
+		    counts[tk + j] += prev * trans[tk + j] * weight[j];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Scale a word's row of alpha to sum to 1.  If every path to it
+     * is impossible, start again from its emissions alone.
+     *
+     * @param row Index in cand, alpha and expEmit of the word's row
+     * @param n   Number of tags
+     * @param i   Which word
+     * @return The log of the sum, which is minus infinity on a restart
+     */
+    protected double rescale(int row, int n, int i)
+    {
+	double sum = 0.0;
+	for(int b = 0; b < n; b++) {
+	    sum += alpha[row + cand[row + b]];
+	}
+	double logsum = Math.log(sum);
+	if(sum == 0.0) {
+	    for(int b = 0; b < n; b++) {
+		int j = cand[row + b];
+		alpha[row + j] = expEmit[row + j];
+		sum += alpha[row + j];
+	    }
+	}
+	scale[i] = sum;
+	for(int b = 0; b < n; b++) {
+	    alpha[row + cand[row + b]] /= sum;
+	}
+	return logsum;
+    }
+
+    /**
+     * The number of sequences kbest looks for: k, but no more than
+     * maxKBest or the number of ways to tag len words with every tag
+     * but the start tag.
+     *
+     * @param k       Most sequences asked for
+     * @param numtags Number of tags, the start tag included
+     * @param len     Number of words
+     * @return The limit
+     */
+    protected static int kbestLimit(int k, int numtags, int len)
+    {
+	k = Math.min(k, maxKBest);
+
+	//Stops as soon as there are k, so never overflows
+	long taggings = 1;
+	for(int i = 0; i < len && taggings < k && numtags > 2; i++) {
+	    taggings *= numtags - 1;
+	}
+	return (int)Math.min(k, taggings);
+    }
+
+    /**
+     * Grow the kbest lattice if needed, keeping what is in it.
+     *
+     * @param states Number of states
+     * @param k      Paths kept per state, from kbestLimit
+     */
+    protected void ensureKBest(int states, int k)
+    {
+	if((long)states * k > Integer.MAX_VALUE) {
+	    throw new IllegalArgumentException("A k-best lattice of " + states + " states, " +
+					       k + " paths each, is too large");
+	}
+	if(kbCount.length < states) {
+	    int n = Math.max(states, kbCount.length * 2);
+	    kbTag   = Arrays.copyOf(kbTag, n);
+	    kbCount = Arrays.copyOf(kbCount, n);
+	}
+	if(kbProb.length < states * k) {
+	    int n = Math.max(states * k, kbProb.length * 2);
+	    kbProb = Arrays.copyOf(kbProb, n);
+	    kbBack = Arrays.copyOf(kbBack, n);
+	}
+    }
+
+    /**
+     * Offer the paths kept to a state, each extended by the same log
+     * probability, to the heap of the best k.
+     *
+     * @param size  Number of paths in the heap
+     * @param k     Most paths to keep
+     * @param state The state
+     * @param add   Log probability added to each of its paths
+     * @return The new number of paths in the heap
+     */
+    protected int mergePaths(int size, int k, int state, float add)
+    {
+	int e = state * k;
+	for(int r = 0; r < kbCount[state]; r++, e++) {
+	    float p = kbProb[e] + add;
+
+	    //The paths are best first, so none after this one will do
+	    if(p == IMPOSSIBLE || (size == k && p <= heapProb[0])) {
+		break;
+	    }
+	    size = offer(size, k, p, e);
+	}
+	return size;
+    }
+
+    /**
+     * Keep the paths in the heap as the list of a state.
+     *
+     * @param state The state
+     * @param tag   The tag the state ends in
+     * @param size  Number of paths in the heap
+     * @param k     Paths kept per state
+     */
+    protected void keepPaths(int state, int tag, int size, int k)
+    {
+	sortHeap(size);
+	System.arraycopy(heapProb, 0, kbProb, state * k, size);
+	System.arraycopy(heapState, 0, kbBack, state * k, size);
+	kbTag[state]   = tag;
+	kbCount[state] = size;
+    }
+
+    /**
+     * Find the k best paths ending in any of the last word's states and
+     * follow their back pointers.
+     *
+     * @param lo     First state of the last word
+     * @param hi     State after the last word's last
+     * @param len    Number of words
+     * @param k      Most paths to find
+     * @param out    Where to put the tags of path h, from h * len
+     * @param scores Where to put the log probability of each path
+     * @return The number of paths found
+     */
+    protected int bestPaths(int lo, int hi, int len, int k, int[] out, float[] scores)
+    {
+	int size = 0;
+	for(int s = lo; s < hi; s++) {
+	    size = mergePaths(size, k, s, 0f);
+	}
+	sortHeap(size);
+
+	for(int h = 0; h < size; h++) {
+	    scores[h] = heapProb[h];
+	    int e = heapState[h];
+	    for(int i = len - 1; i >= 0; i--) {
+		out[h * len + i] = kbTag[e / k];
+		e = kbBack[e];
+	    }
+	}
+	return size;
+    }
+
+    /**
+     * Find the k most probable tag sequences for a sequence of word ids.
+     * The model's beam is not used.
+     *
+     * @param model  The model to score with
+     * @param in     Word ids from model.lookupWord
+     * @param len    Number of words in in to use
+     * @param k      Most sequences to find; no more than maxKBest are
+     * @param out    Where to put the tag ids of sequence h, from h * len
+     * @param scores Where to put the log probability of each sequence
+     * @return The number of sequences found, best first
+     */
+    public int kbest(TagModel model, int[] in, int len, int k, int[] out, float[] scores)
+    {
+	model = model.getSnapshot();
+	if(model instanceof TrigramModel) {
+	    return kbestTrigram((TrigramModel)model, in, len, k, out, scores);
+	}
+
+	int     numtags = model.getTags().length;
+	int     start   = model.getStartTag();
+	float[] trans   = model.getTransitions();
+
+	k = kbestLimit(k, numtags, len);
+	ensureCapacity(len, numtags);
+	ensureHeap(k);
+	if(len == 0 || k <= 0) {
+	    return 0;
+	}
+	if(kbStart.length < len + 1) {
+	    kbStart = new int[Math.max(len + 1, kbStart.length * 2)];
+	}
+
+	//Row i of cand holds the tags of word i, and state kbStart[i] + b
+	//is tag b of the row.  First word: only the start tag can precede it
+	int n1 = candidates(model, in, 0, 0, numtags, start);
+	ensureKBest(n1, k);
+	for(int b = 0; b < n1; b++) {
+	    int   j    = cand[b];
+	    float p    = trans[start * numtags + j] + emit[j];
+	    int   size = 0;
+	    if(p != IMPOSSIBLE) {
+		heapProb[0]  = p;
+		heapState[0] = -1;
+		size         = 1;
+	    }
+	    keepPaths(b, j, size, k);
+	}
+	kbStart[0] = 0;
+	kbStart[1] = n1;
+
+	for(int i = 1; i < len; i++) {
+	    int row = i * numtags;
+	    int c1  = row - numtags;
+	    int s1  = kbStart[i - 1];
+	    int s2  = kbStart[i];
+	    int n2  = candidates(model, in, i, i, numtags, start);
+	    ensureKBest(s2 + n2, k);
+
+	    for(int b = 0; b < n2; b++) {
+		int j    = cand[row + b];
+		int size = 0;
+		for(int a = 0; a < n1; a++) {
+		    size = mergePaths(size, k, s1 + a, trans[cand[c1 + a] * numtags + j] + emit[j]);
+		}
+		keepPaths(s2 + b, j, size, k);
+	    }
+	    kbStart[i + 1] = s2 + n2;
+	    n1             = n2;
+	}
+
+	return bestPaths(kbStart[len - 1], kbStart[len], len, k, out, scores);
+    }
+
+    /**
+     * Fill emit with a word's emissions and a row of cand with the
+     * tags the model allows it, from the word's cached row if there
+     * is one.  Only the entries of emit for those tags are set.
+     *
+     * @param model   The model to score with
+     * @param in      Word ids from model.lookupWord
+     * @param i       Which word
+     * @param row     Row of cand to fill
+     * @param numtags Number of tags
+     * @param start   Id of the start tag, which is never allowed
+     * @return The number of tags in the row
+     */
+    protected int candidates(TagModel model, int[] in, int i, int row, int numtags, int start)
+    {
+	int         off = row * numtags;
+	EmissionRow r   = haveRows ? rows[i] : null;
+	int         n;
+	if(r != null) {
+	    n = r.tags.length;
+	    System.arraycopy(r.tags, 0, cand, off, n);
+	    for(int b = 0; b < n; b++) {
+		emit[r.tags[b]] = r.probs[b];
+	    }
+	} else {
+	    n = model.fillTags(in[i], cand, off);
+	}
+
+	//Drop the start tag, and fall back on every tag if none is left
+	int m = 0;
+	for(int b = 0; b < n; b++) {
+	    if(cand[off + b] != start) {
+		cand[off + m++] = cand[off + b];
+	    }
+	}
+	if(m == 0) {
+	    for(int j = 0; j < numtags; j++) {
+		if(j != start) {
+		    cand[off + m++] = j;
+		}
+	    }
+	    r = null;
+	}
+
+	if(r == null) {
+	    model.fillEmissions(in[i], emit);
+	}
+	ncand[row] = m;
+	return m;
+    }
+
+    /**
+     * Find the most probable tags for a sequence of word ids under a
+     * second order model.
+     *
+     * @param model The model to score with
+     * @param in    Word ids from model.lookupWord
+     * @param len   Number of words in in to use
+     * @param out   Where to put the tag id of each word
+     * @return The log probability of the best path
+     */
+    public float decodeTrigram(TrigramModel model, int[] in, int len, int[] out)
+    {
+	int     numtags = model.getTags().length;
+	int     start   = model.getStartTag();
+	float[] tri     = model.getTrigrams();
+	int     pairs   = numtags * numtags;
+	int     beam    = model.getBeam();
+
+	ensurePairCapacity(len, numtags);
+	ensureHeap(beam);
+	if(len == 0) {
+	    return 0f;
+	}
+
+	//Rows 0 and 1 of cand are the two start tags before the sentence
+	cand[0]       = start;
+	cand[numtags] = start;
+	ncand[0]      = 1;
+	ncand[1]      = 1;
+	pairprob[start * numtags + start] = 0f;
+
+	for(int i = 0; i < len; i++) {
+	    int c0  = i * numtags;
+	    int c1  = c0 + numtags;
+	    int c2  = c1 + numtags;
+	    int n0  = ncand[i];
+	    int n1  = ncand[i + 1];
+	    int row = i * pairs;
+
+	    //Allowed tags for this word, less any far behind the best
+	    int   n2  = candidates(model, in, i, i + 2, numtags, start);
+	    float top = IMPOSSIBLE;
+	    for(int b = 0; b < n2; b++) {
+		top = Math.max(top, emit[cand[c2 + b]]);
+	    }
+	    int m = 0;
+	    for(int b = 0; b < n2; b++) {
+		int j = cand[c2 + b];
+		if(emit[j] != IMPOSSIBLE && emit[j] >= top - pruneWidth) {
+		    cand[c2 + m++] = j;
+		}
+	    }
+	    if(m == 0) {
+		m = n2;
+	    }
+	    n2 = m;
+	    ncand[i + 2] = n2;
+
+	    //Every state gets a back edge to some state of the word before,
+	    //so following them never leaves the lattice
+	    float best = IMPOSSIBLE;
+	    for(int a = 0; a < n1; a++) {
+		int t1 = cand[c1 + a];
+		int p1 = t1 * numtags;
+		for(int b = 0; b < n2; b++) {
+		    nextpair[p1 + cand[c2 + b]]       = IMPOSSIBLE;
+		    pairback[row + p1 + cand[c2 + b]] = cand[c0];
+		}
+
+		//Each surviving (t0, t1) state reads one contiguous row of tri
+		for(int z = 0; z < n0; z++) {
+		    int   t0   = cand[c0 + z];
+		    float prev = pairprob[t0 * numtags + t1];
+		    if(prev == IMPOSSIBLE) {
+			continue;
+		    }
+		    int base = (t0 * numtags + t1) * numtags;
+		    for(int b = 0; b < n2; b++) {
+			int   t2   = cand[c2 + b];
+			float test = prev + tri[base + t2];
+			if(test > nextpair[p1 + t2]) {
+			    nextpair[p1 + t2]       = test;
+			    pairback[row + p1 + t2] = t0;
+			}
+		    }
+		}
+
+		for(int b = 0; b < n2; b++) {
+		    int t2 = cand[c2 + b];
+		    nextpair[p1 + t2] += emit[t2];
+		    if(nextpair[p1 + t2] > best) {
+			best = nextpair[p1 + t2];
+		    }
+		}
+	    }
+
+	    //If every path is impossible, start again from the emissions
+	    if(best == IMPOSSIBLE) {
+		for(int a = 0; a < n1; a++) {
+		    int p1 = cand[c1 + a] * numtags;
+		    for(int b = 0; b < n2; b++) {
+			int t2 = cand[c2 + b];
+			nextpair[p1 + t2] = (emit[t2] == IMPOSSIBLE) ? 0f : emit[t2];
+			best              = Math.max(best, nextpair[p1 + t2]);
+		    }
+		}
+	    }
+
+	    //Drop pair states too far behind to matter, or outside the beam
+	    float cut = best - pruneWidth;
+	    if(beam > 0 && n1 * n2 > beam) {
+		int size = 0;
+		for(int a = 0; a < n1; a++) {
+		    int p1 = cand[c1 + a] * numtags;
+		    for(int b = 0; b < n2; b++) {
+			float p = nextpair[p1 + cand[c2 + b]];
+			if(p != IMPOSSIBLE) {
+			    size = offer(size, beam, p, p1 + cand[c2 + b]);
+			}
+		    }
+		}
+		if(size == beam) {
+		    cut = Math.max(cut, heapProb[0]);
+		}
+	    }
+	    //and keep only the tags some surviving state ends in
+	    int kept = 0;
+	    for(int b = 0; b < n2; b++) {
+		int     t2    = cand[c2 + b];
+		boolean alive = false;
+		for(int a = 0; a < n1; a++) {
+		    int p = cand[c1 + a] * numtags + t2;
+		    if(nextpair[p] < cut) {
+			nextpair[p] = IMPOSSIBLE;
+		    } else {
+			alive = true;
+		    }
+		}
+		if(alive) {
+		    cand[c2 + kept++] = t2;
+		}
+	    }
+	    ncand[i + 2] = kept;
+
+	    float[] swap = pairprob;
+	    pairprob = nextpair;
+	    nextpair = swap;
+	}
+
+	//Find final pair of tags
+	int   c1  = len * numtags;
+	int   c2  = c1 + numtags;
+	float max = IMPOSSIBLE;
+	int   t1  = cand[c1];
+	int   t2  = cand[c2];
+	for(int a = 0; a < ncand[len]; a++) {
+	    for(int b = 0; b < ncand[len + 1]; b++) {
+		float p = pairprob[cand[c1 + a] * numtags + cand[c2 + b]];
+		if(p > max) {
+		    max = p;
+		    t1  = cand[c1 + a];
+		    t2  = cand[c2 + b];
+		}
+	    }
+	}
+
+	//Follow back edges to the first word
+	for(int i = len - 1; i >= 0; i--) {
+	    out[i] = t2;
+	    int t0 = pairback[i * pairs + t1 * numtags + t2];
+	    t2 = t1;
+	    t1 = t0;
+	}
+	return max;
+    }
+
+    /**
+     * Find P(tag | sentence) for each word under a second order model,
+     * by forward-backward over pairs of tags.  Tags are pruned by
+     * emission as decodeTrigram prunes them; pair states are not.
+     *
+     * @param model The model to score with
+     * @param in    Word ids from model.lookupWord
+     * @param len   Number of words in in to use
+     * @param out   Where to put the posteriors, indexed by word * number
+     *              of tags + tag; tags a word may not have get 0
+     * @return The log probability of the sentence, summed over all paths
+     */
+    public float posteriorsTrigram(TrigramModel model, int[] in, int len, float[] out)
+    {
+	int      numtags = model.getTags().length;
+	int      start   = model.getStartTag();
+	int      pairs   = numtags * numtags;
+	double[] tri     = exp(model.getTrigrams());
+
+	ensurePairCapacity(len, numtags);
+	ensureForwardBackward(len, numtags, pairs);
+	Arrays.fill(out, 0, len * numtags, 0f);
+	if(len == 0) {
+	    return 0f;
+	}
+
+	//Rows 0 and 1 of cand are the two start tags before the sentence;
+	//word i has the tags of row i + 2, and states (row i + 1, row i + 2)
+	cand[0]       = start;
+	cand[numtags] = start;
+	ncand[0]      = 1;
+	ncand[1]      = 1;
+
+	double logp = 0;
+	for(int i = 0; i < len; i++) {
+	    int c0  = i * numtags;
+	    int c1  = c0 + numtags;
+	    int c2  = c1 + numtags;
+	    int n0  = ncand[i];
+	    int n1  = ncand[i + 1];
+	    int row = i * pairs;
+
+	    int   n2  = candidates(model, in, i, i + 2, numtags, start);
+	    float top = IMPOSSIBLE;
+	    for(int b = 0; b < n2; b++) {
+		top = Math.max(top, emit[cand[c2 + b]]);
+	    }
+	    int m = 0;
+	    for(int b = 0; b < n2; b++) {
+		int j = cand[c2 + b];
+		if(emit[j] != IMPOSSIBLE && emit[j] >= top - pruneWidth) {
+		    cand[c2 + m++] = j;
+		}
+	    }
+	    if(m == 0) {
+		m = n2;
+	    }
+	    n2 = m;
+	    ncand[i + 2] = n2;
+	    logp += shiftEmissions(c0, c2, n2);
+
+	    double sum = 0.0;
+	    for(int a = 0; a < n1; a++) {
+		int t1 = cand[c1 + a];
+		int p1 = row + t1 * numtags;
+		for(int b = 0; b < n2; b++) {
+		    alpha[p1 + cand[c2 + b]] = 0.0;
+		}
+		for(int z = 0; z < n0; z++) {
+		    int    t0   = cand[c0 + z];
+		    double prev = (i == 0) ? 1.0 : alpha[row - pairs + t0 * numtags + t1];
+		    if(prev == 0.0) {
+			continue;
+		    }
+		    int base = (t0 * numtags + t1) * numtags;
+		    for(int b = 0; b < n2; b++) {
+			int t2 = cand[c2 + b];
+			alpha[p1 + t2] += prev * tri[base + t2];
+		    }
+		}
+		for(int b = 0; b < n2; b++) {
+		    int t2 = cand[c2 + b];
+		    alpha[p1 + t2] *= expEmit[c0 + t2];
+		    sum += alpha[p1 + t2];
+		}
+	    }
+
+	    //Scale to sum to 1, starting again from the emissions if
+	    //every path is impossible
+	    logp += Math.log(sum);
+	    if(sum == 0.0) {
+		for(int a = 0; a < n1; a++) {
+		    int p1 = row + cand[c1 + a] * numtags;
+		    for(int b = 0; b < n2; b++) {
+			alpha[p1 + cand[c2 + b]] = expEmit[c0 + cand[c2 + b]];
+			sum += expEmit[c0 + cand[c2 + b]];
+		    }
+		}
+	    }
+	    scale[i] = sum;
+	    for(int a = 0; a < n1; a++) {
+		int p1 = row + cand[c1 + a] * numtags;
+		for(int b = 0; b < n2; b++) {
+		    alpha[p1 + cand[c2 + b]] /= sum;
+		}
+	    }
+	}
+
+	//Backward, scaled by the same sums
+	int last = (len - 1) * pairs;
+	for(int a = 0; a < ncand[len]; a++) {
+	    for(int b = 0; b < ncand[len + 1]; b++) {
+		beta[last + cand[len * numtags + a] * numtags + cand[(len + 1) * numtags + b]] = 1.0;
+	    }
+	}
+	for(int i = len - 2; i >= 0; i--) {
+	    int    row = i * pairs;
+	    int    c1  = (i + 1) * numtags;
+	    int    c2  = c1 + numtags;
+	    int    c3  = c2 + numtags;
+	    int    n3  = ncand[i + 3];
+	    double inv = 1.0 / scale[i + 1];
+	    for(int b = 0; b < ncand[i + 2]; b++) {
+		int t2 = cand[c2 + b];
+		//Weight of each next tag: its emission and what follows it
+		int r2 = row + pairs + t2 * numtags;
+		for(int c = 0; c < n3; c++) {
+		    int t3 = cand[c3 + c];
+		    weight[t3] = expEmit[c1 + t3] * beta[r2 + t3];
+		}
+		for(int a = 0; a < ncand[i + 1]; a++) {
+		    int    t1   = cand[c1 + a];
+		    int    base = (t1 * numtags + t2) * numtags;
+		    double sum  = 0.0;
+		    for(int c = 0; c < n3; c++) {
+			int t3 = cand[c3 + c];
+			sum += tri[base + t3] * weight[t3];
+		    }
+		    beta[row + t1 * numtags + t2] = sum * inv;
+		}
+	    }
+	}
+
+	//Posterior of a tag: sum over the tags before it of its pair states
+	for(int i = 0; i < len; i++) {
+	    int    row = i * pairs;
+	    int    c1  = (i + 1) * numtags;
+	    int    c2  = c1 + numtags;
+	    int    o   = i * numtags;
+	    double sum = 0.0;
+	    for(int b = 0; b < ncand[i + 2]; b++) {
+		int    t2 = cand[c2 + b];
+		double p  = 0.0;
+		for(int a = 0; a < ncand[i + 1]; a++) {
+		    int s2 = row + cand[c1 + a] * numtags + t2;
+		    p += alpha[s2] * beta[s2];
+		}
+		weight[t2] = p;
+		sum       += p;
+	    }
+	    for(int b = 0; b < ncand[i + 2]; b++) {
+		int t2 = cand[c2 + b];
+		out[o + t2] = (sum > 0) ? (float)(weight[t2] / sum) : 0f;
+	    }
+	}
+	return (float)logp;
+    }
+
+    /**
+     * Find the k most probable tag sequences for a sequence of word ids
+     * under a second order model, over pairs of tags.  Tags are pruned
+     * by emission as decodeTrigram prunes them; pair states are not.
+     *
+     * @param model  The model to score with
+     * @param in     Word ids from model.lookupWord
+     * @param len    Number of words in in to use
+     * @param k      Most sequences to find; no more than maxKBest are
+     * @param out    Where to put the tag ids of sequence h, from h * len
+     * @param scores Where to put the log probability of each sequence
+     * @return The number of sequences found, best first
+     */
+    public int kbestTrigram(TrigramModel model, int[] in, int len, int k, int[] out, float[] scores)
+    {
+	int     numtags = model.getTags().length;
+	int     start   = model.getStartTag();
+	float[] tri     = model.getTrigrams();
+
+	k = kbestLimit(k, numtags, len);
+	ensurePairCapacity(len, numtags);
+	ensureHeap(k);
+	if(len == 0 || k <= 0) {
+	    return 0;
+	}
+	if(kbStart.length < len + 1) {
+	    kbStart = new int[Math.max(len + 1, kbStart.length * 2)];
+	}
+
+	//Rows 0 and 1 of cand are the two start tags before the sentence;
+	//word i has the tags of row i + 2
+	cand[0]       = start;
+	cand[numtags] = start;
+	ncand[0]      = 1;
+	ncand[1]      = 1;
+	kbStart[0]    = 0;
+
+	for(int i = 0; i < len; i++) {
+	    int c0 = i * numtags;
+	    int c1 = c0 + numtags;
+	    int c2 = c1 + numtags;
+	    int n0 = ncand[i];
+	    int n1 = ncand[i + 1];
+
+	    int   n2  = candidates(model, in, i, i + 2, numtags, start);
+	    float top = IMPOSSIBLE;
+	    for(int b = 0; b < n2; b++) {
+		top = Math.max(top, emit[cand[c2 + b]]);
+	    }
+	    int m = 0;
+	    for(int b = 0; b < n2; b++) {
+		int j = cand[c2 + b];
+		if(emit[j] != IMPOSSIBLE && emit[j] >= top - pruneWidth) {
+		    cand[c2 + m++] = j;
+		}
+	    }
+	    if(m == 0) {
+		m = n2;
+	    }
+	    n2 = m;
+	    ncand[i + 2] = n2;
+
+	    //State s2 + a * n2 + b is the pair (tag a of the word before,
+	    //tag b of this one); the states before it are s1 + z * n1 + a
+	    int s1 = (i == 0) ? 0 : kbStart[i - 1];
+	    int s2 = kbStart[i];
+	    ensureKBest(s2 + n1 * n2, k);
+	    for(int a = 0; a < n1; a++) {
+		int t1 = cand[c1 + a];
+		for(int b = 0; b < n2; b++) {
+		    int t2   = cand[c2 + b];
+		    int size = 0;
+		    if(i == 0) {
+			float p = tri[(start * numtags + start) * numtags + t2] + emit[t2];
+			if(p != IMPOSSIBLE) {
+			    heapProb[0]  = p;
+			    heapState[0] = -1;
+			    size         = 1;
+			}
+		    } else {
+			for(int z = 0; z < n0; z++) {
+			    int base = (cand[c0 + z] * numtags + t1) * numtags;
+			    size = mergePaths(size, k, s1 + z * n1 + a, tri[base + t2] + emit[t2]);
+			}
+		    }
+		    keepPaths(s2 + a * n2 + b, t2, size, k);
+		}
+	    }
+	    kbStart[i + 1] = s2 + n1 * n2;
+	}
+
+	return bestPaths(kbStart[len - 1], kbStart[len], len, k, out, scores);
+    }
+}
@@ -0,0 +1,196 @@
+package cs481.postag;
+
+import java.util.*;
+
+/**
+ * Maps strings (words or tags) to dense integer ids.
+ *
+ * <pre>
+ * Typical use:
+ * Vocabulary v = new Vocabulary();
+ * int id = v.intern("dog");
+ * String s = v.get(id);
+ * </pre>
+ *
+ * Ids are handed out in order of first appearance, starting at 0, so
+ * they can be used directly as array indices.  Pairs of ids are packed
+ * into a single long by {@link #pair(int, int)}.
+ */
+public class Vocabulary
+{
+    /**
+     * Returned by lookup for strings that have never been interned
+     */
+    public static final int UNKNOWN = -1;
+
+    /**
+     * Map from string to its id (int[1], used as int *)
+     */
+    protected HashMap ids;
+    /**
+     * Strings indexed by id
+     */
+    protected String[] names;
+    /**
+     * Number of ids handed out
+     */
+    protected int size;
+
+    /**
+     * Make an empty vocabulary.
+     */
+    public Vocabulary()
+    {
+	ids   = new HashMap();
+	names = new String[16];
+	size  = 0;
+    }
+
+    /**
+     * Copy a vocabulary, keeping every id.  Interning into the copy
+     * leaves the original as it was.
+     *
+     * @param other The vocabulary to copy
+     */
+    public Vocabulary(Vocabulary other)
+    {
+	ids   = new HashMap(other.ids);
+	names = Arrays.copyOf(other.names, other.names.length);
+	size  = other.size;
+    }
+
+    /**
+     * Remove all strings.
+     */
+    public void clear()
+    {
+	ids.clear();
+	Arrays.fill(names, 0, size, null);
+	size = 0;
+    }
+
+    /**
+     * Get the id for a string, adding it if it is new.
+     *
+     * @param s The string to intern
+     * @return The id of s
+     */
+    public int intern(String s)
+    {
+	int[] ip = (int[])ids.get(s);
+	if(ip != null) {
+	    return ip[0];
+	}
+
+	if(size == names.length) {
+	    names = Arrays.copyOf(names, size * 2);
+	}
+	names[size] = s;
+	ip = new int[1];
+	ip[0] = size++;
+	ids.put(s, ip);
+	return ip[0];
+    }
+
+    /**
+     * Get the id for a string without adding it.
+     *
+     * @param s The string to look up
+     * @return The id of s, or UNKNOWN if it has never been interned
+     */
+    public int lookup(String s)
+    {
+	int[] ip = (int[])ids.get(s);
+	return (ip == null) ? UNKNOWN : ip[0];
+    }
+
+    /**
+     * Get the string for an id.
+     *
+     * @param id An id handed out by intern
+     * @return The string with that id
+     */
+    public String get(int id)
+    {
+	return names[id];
+    }
+
+    /**
+     * Number of distinct strings.
+     *
+     * @return The number of ids handed out
+     */
+    public int size()
+    {
+	return size;
+    }
+
+    /**
+     * All strings, indexed by id.
+     *
+     * @return A new array of length size()
+     */
+    public String[] toArray()
+    {
+	return Arrays.copyOf(names, size);
+    }
+
+    /**
+     * Pack two ids into one key.
+     *
+     * @param hi The 1st id
+     * @param lo The 2nd id
+     * @return A key that sorts by hi, then lo
+     */
+    public static long pair(int hi, int lo)
+    {
+	return (((long)hi) << 32) | (lo & 0xffffffffL);
+    }
+
+    /**
+     * The 1st id of a key made by pair.
+     *
+     * @param key A key made by pair
+     * @return The 1st id
+     */
+    public static int first(long key)
+    {
+	return (int)(key >>> 32);
+    }
+
+    /**
+     * The 2nd id of a key made by pair.
+     *
+     * @param key A key made by pair
+     * @return The 2nd id
+     */
+    public static int second(long key)
+    {
+	return (int)key;
+    }
+
+    /**
+     * Pack three ids, each less than 2^21, into one key.
+     *
+     * @param a The 1st id
+     * @param b The 2nd id
+     * @param c The 3rd id
+     * @return A key that sorts by a, then b, then c
+     */
+    public static long triple(int a, int b, int c)
+    {
+	return (((long)a) << 42) | (((long)b) << 21) | c;
+    }
+
+    /**
+     * An id of a key made by triple.
+     *
+     * @param key A key made by triple
+     * @param i   Which id: 0, 1 or 2
+     * @return The id
+     */
+    public static int tripleId(long key, int i)
+    {
+	return (int)(key >>> (42 - 21 * i)) & 0x1fffff;
+    }
+}
@@ -0,0 +1,75 @@
+package cs481.postag;
+
+/**
+ * Witten-Bell smoothing: each distribution is interpolated with the
+ * tag unigram distribution, giving it as much weight as the number of
+ * different outcomes seen after the same condition.
+ *
+ * For a condition seen N times with T different outcomes,
+ * P(x) = (c(x) + T P(tag)) / (N + T).
+ */
+public class WittenBellSmoothing implements Smoothing
+{
+    public String getName()
+    {
+	return "wb";
+    }
+
+    /**
+     * Unseen pairs get the unseen mass of the whole corpus,
+     * types / (tokens + types), spread over all tags, since one value
+     * stands for every word.
+     */
+    public float[] emissions(TrainingCounts counts, long[] keys, float[] missing)
+    {
+	double pairs = counts.cTagWord.size();
+	missing[0] = (float)Math.log(pairs / (counts.cTokens + pairs) / counts.tagVocab.size());
+
+	int[]   types = counts.cTagWord.secondTypes(counts.wordVocab.size());
+	float[] p     = new float[keys.length];
+	for(int i = 0; i < keys.length; i++) {
+	    int    t     = Vocabulary.first(keys[i]);
+	    int    w     = Vocabulary.second(keys[i]);
+	    double prior = ((double)counts.cTag.get(t)) / counts.cTokens;
+
+	    p[i] = (float)Math.log((counts.cTagWord.get(keys[i]) + types[w] * prior) /
+				   (counts.cWord.get(w) + types[w]));
+	}
+	return p;
+    }
+
+    public float[] transitions(TrainingCounts counts)
+    {
+	int     numtags = counts.tagVocab.size();
+	int[]   types   = counts.cTagTag.firstTypes(numtags);
+	int[]   totals  = counts.cTagTag.firstTotals(numtags);
+	double[] prior  = new double[numtags];
+	for(int t = 0; t < numtags; t++) {
+	    if(t != counts.startTag) {
+		prior[t] = ((double)counts.cTag.get(t)) / counts.cTokens;
+	    }
+	}
+
+	double[] p = new double[numtags * numtags];
+	for(int t1 = 0; t1 < numtags; t1++) {
+	    for(int t2 = 0; t2 < numtags; t2++) {
+		p[t1 * numtags + t2] = (totals[t1] == 0) ? prior[t2] : types[t1] * prior[t2];
+	    }
+	}
+	long[] ttkeys = counts.cTagTag.keys();
+	for(int i = 0; i < ttkeys.length; i++) {
+	    p[Vocabulary.first(ttkeys[i]) * numtags + Vocabulary.second(ttkeys[i])] +=
+		counts.cTagTag.get(ttkeys[i]);
+	}
+
+	float[] pTagTag = new float[p.length];
+	for(int t1 = 0; t1 < numtags; t1++) {
+	    double norm = (totals[t1] == 0) ? 1 : totals[t1] + types[t1];
+	    for(int t2 = 0; t2 < numtags; t2++) {
+		double x = p[t1 * numtags + t2] / norm;
+		pTagTag[t1 * numtags + t2] = (x > 0) ? (float)Math.log(x) : HMMTagger.epsilon;
+	    }
+	}
+	return pTagTag;
+    }
+}
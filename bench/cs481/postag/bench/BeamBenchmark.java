@@ -0,0 +1,110 @@
+package cs481.postag.bench;
+
+import cs481.postag.*;
+import cs481.token.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Tagging throughput of beam search against exact Viterbi (beam 0) on
+ * the same model.
+ *
+ * JMH reports sentences per second.  The accuracy at each beam width,
+ * and how often it agrees with exact Viterbi, are printed once per
+ * trial, so the two together give the accuracy versus throughput curve.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BeamBenchmark
+{
+    @Param({"POSTagBigram", "POSTagTrigram"})
+    public String tagger;
+
+    /**
+     * Beam width; 0 is exact Viterbi
+     */
+    @Param({"0", "1", "2", "3", "5", "10"})
+    public int beam;
+
+    @Param({"30"})
+    public int length;
+
+    protected Tagger   pt;
+    protected Vector[] sents;
+    protected int      next;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+	pt = SyntheticCorpus.newTagger(tagger);
+	pt.train(SyntheticCorpus.paragraphs(1, TrainBenchmark.TOKENS, 5, 40), 1);
+	sents = SyntheticCorpus.sentences(2, TagBenchmark.SENTENCES, length);
+	next  = 0;
+
+	String[][] gold  = tagsOf(sents);
+	pt.setBeam(0);
+	String[][] exact = tagAll();
+	pt.setBeam(beam);
+	String[][] beamed = tagAll();
+
+	System.out.println();
+	System.out.println(tagger + " beam " + beam +
+			   ": accuracy " + agreement(beamed, gold) +
+			   ", agreement with exact Viterbi " + agreement(beamed, exact));
+    }
+
+    /**
+     * Tag every sentence with the current beam.
+     */
+    protected String[][] tagAll()
+    {
+	for(int i = 0; i < sents.length; i++) {
+	    pt.tagSentence(sents[i]);
+	}
+	return tagsOf(sents);
+    }
+
+    protected static String[][] tagsOf(Vector[] sents)
+    {
+	String[][] out = new String[sents.length][];
+	for(int i = 0; i < sents.length; i++) {
+	    out[i] = new String[sents[i].size()];
+	    for(int j = 0; j < out[i].length; j++) {
+		out[i][j] = (String)((Token)sents[i].get(j)).getAttrib("pos");
+	    }
+	}
+	return out;
+    }
+
+    /**
+     * Fraction of tokens given the same tag.
+     */
+    protected static double agreement(String[][] a, String[][] b)
+    {
+	int same = 0, total = 0;
+	for(int i = 0; i < a.length; i++) {
+	    for(int j = 0; j < a[i].length; j++) {
+		total++;
+		if(a[i][j].equals(b[i][j])) {
+		    same++;
+		}
+	    }
+	}
+	return ((double)same) / total;
+    }
+
+    @Benchmark
+    public Object tagSentence()
+    {
+	Vector s = sents[next];
+	next = (next + 1) & (TagBenchmark.SENTENCES - 1);
+	pt.tagSentence(s);
+	return s;
+    }
+}
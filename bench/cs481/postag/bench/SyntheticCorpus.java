@@ -0,0 +1,142 @@
+package cs481.postag.bench;
+
+import cs481.postag.*;
+import cs481.token.*;
+
+import java.util.*;
+
+/**
+ * Makes tagged corpora from a fixed random HMM, so the benchmarks need
+ * no corpus download.
+ *
+ * There are NUMTAGS tags (about the size of the Penn tagset) and
+ * NUMWORDS words.  Each tag prefers a few following tags and draws
+ * words from a Zipf-like distribution, and the word lists of
+ * different tags overlap so some words are ambiguous.  The same seed
+ * always gives the same corpus.
+ */
+public class SyntheticCorpus
+{
+    public static final int NUMTAGS  = 45;
+    public static final int NUMWORDS = 20000;
+
+    /**
+     * Sentences per paragraph
+     */
+    public static final int PARAGRAPH = 20;
+
+    protected Random rand;
+    protected int    prev;
+
+    /**
+     * Make a generator.
+     *
+     * @param seed Random seed
+     */
+    public SyntheticCorpus(long seed)
+    {
+	rand = new Random(seed);
+	prev = 0;
+    }
+
+    /**
+     * Next tag id, mostly one of a few successors of the previous tag.
+     */
+    protected int nextTag()
+    {
+	prev = (rand.nextInt(4) == 0) ?
+	    rand.nextInt(NUMTAGS) :
+	    (prev * 7 + 1 + rand.nextInt(3)) % NUMTAGS;
+	return prev;
+    }
+
+    /**
+     * A word for a tag; low ranks are far more likely than high ones.
+     */
+    protected String nextWord(int tag)
+    {
+	int rank = (int)Math.pow(NUMWORDS, rand.nextDouble()) - 1;
+	int word = (tag * 7919 + rank) % NUMWORDS;
+	String w = "w" + word;
+	return rand.nextInt(10) == 0 ? w.toUpperCase() : w;
+    }
+
+    /**
+     * One tagged sentence.
+     *
+     * @param len Number of tokens
+     * @return A Vector of Tokens with the attribute &quot;pos&quot;
+     */
+    public Vector sentence(int len)
+    {
+	Vector sent = new Vector(len);
+	prev = 0;
+	for(int i = 0; i < len; i++) {
+	    int   t   = nextTag();
+	    Token tok = new Token(nextWord(t));
+	    tok.putAttrib("pos", "T" + t);
+	    sent.add(tok);
+	}
+	return sent;
+    }
+
+    /**
+     * A training corpus of exactly the given number of tokens.
+     *
+     * @param seed   Random seed
+     * @param tokens Number of tokens
+     * @param minLen Shortest sentence
+     * @param maxLen Longest sentence
+     * @return A Vector of paragraphs of sentences
+     */
+    public static Vector paragraphs(long seed, int tokens, int minLen, int maxLen)
+    {
+	SyntheticCorpus gen  = new SyntheticCorpus(seed);
+	Vector          out  = new Vector();
+	Vector          para = null;
+
+	for(int left = tokens; left > 0;) {
+	    if(para == null || para.size() == PARAGRAPH) {
+		para = new Vector();
+		out.add(para);
+	    }
+	    int len = Math.min(left, minLen + gen.rand.nextInt(maxLen - minLen + 1));
+	    para.add(gen.sentence(len));
+	    left -= len;
+	}
+	return out;
+    }
+
+    /**
+     * Sentences all of one length.
+     *
+     * @param seed  Random seed
+     * @param count Number of sentences
+     * @param len   Tokens per sentence
+     * @return The sentences
+     */
+    public static Vector[] sentences(long seed, int count, int len)
+    {
+	SyntheticCorpus gen = new SyntheticCorpus(seed);
+	Vector[]        out = new Vector[count];
+	for(int i = 0; i < count; i++) {
+	    out[i] = gen.sentence(len);
+	}
+	return out;
+    }
+
+    /**
+     * Make an untrained tagger by class name.
+     *
+     * @param name POSTag, POSTagBigram, POSTagGT or POSTagTrigram
+     * @return A new tagger
+     */
+    public static Tagger newTagger(String name)
+    {
+	try {
+	    return (Tagger)Class.forName("cs481.postag." + name).getDeclaredConstructor().newInstance();
+	} catch(Exception e) {
+	    throw new IllegalArgumentException("No tagger " + name, e);
+	}
+    }
+}
@@ -0,0 +1,101 @@
+package cs481.postag.bench;
+
+import cs481.postag.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Tagging throughput (sentences per second) and latency per sentence,
+ * for sentences of several lengths.
+ *
+ * Multiply sentences per second by length for tokens per second.
+ * tagSentences is the batch decoder, timed per sentence.
+ * tagConfidence also finds posteriors by forward-backward, and
+ * tagKBest finds the KBEST best taggings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagBenchmark
+{
+    /**
+     * Sentences cycled through (a power of 2)
+     */
+    public static final int SENTENCES = 1024;
+    /**
+     * Taggings tagKBest asks for
+     */
+    public static final int KBEST = 10;
+
+    @Param({"POSTag", "POSTagBigram", "POSTagGT", "POSTagTrigram"})
+    public String tagger;
+
+    /**
+     * Sentence length bucket
+     */
+    @Param({"5", "15", "30", "60"})
+    public int length;
+
+    protected Tagger   pt;
+    protected Vector[] sents;
+    protected int      next;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+	pt = SyntheticCorpus.newTagger(tagger);
+	pt.train(SyntheticCorpus.paragraphs(1, TrainBenchmark.TOKENS, 5, 40), 1);
+	//A different seed, so some words are unknown
+	sents = SyntheticCorpus.sentences(2, SENTENCES, length);
+	next  = 0;
+    }
+
+    @Benchmark
+    public Object tagSentence()
+    {
+	Vector s = sents[next];
+	next = (next + 1) & (SENTENCES - 1);
+	pt.tagSentence(s);
+	return s;
+    }
+
+    /**
+     * Viterbi tags and forward-backward posteriors, for comparison
+     * with tagSentence.
+     */
+    @Benchmark
+    public Object tagConfidence()
+    {
+	Vector s = sents[next];
+	next = (next + 1) & (SENTENCES - 1);
+	return pt.tagConfidence(s);
+    }
+
+    /**
+     * The KBEST most probable taggings, for comparison with tagSentence.
+     */
+    @Benchmark
+    public Object tagKBest()
+    {
+	Vector s = sents[next];
+	next = (next + 1) & (SENTENCES - 1);
+	return pt.tagKBest(s, KBEST);
+    }
+
+    /**
+     * All the sentences through the batch decoder, per sentence, for
+     * comparison with tagSentence.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SENTENCES)
+    public Object tagSentences()
+    {
+	pt.tagSentences(sents);
+	return sents;
+    }
+}
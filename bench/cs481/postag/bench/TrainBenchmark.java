@@ -0,0 +1,48 @@
+package cs481.postag.bench;
+
+import cs481.postag.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Training throughput, in tokens per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainBenchmark
+{
+    /**
+     * Tokens in the training corpus
+     */
+    public static final int TOKENS = 200000;
+
+    @Param({"POSTag", "POSTagBigram", "POSTagGT", "POSTagTrigram"})
+    public String tagger;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    protected Vector training;
+    protected Tagger pt;
+
+    @Setup
+    public void setup()
+    {
+	training = SyntheticCorpus.paragraphs(1, TOKENS, 5, 40);
+	pt       = SyntheticCorpus.newTagger(tagger);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public Object train()
+    {
+	pt.train(training, threads);
+	return pt;
+    }
+}
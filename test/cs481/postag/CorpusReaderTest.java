@@ -0,0 +1,73 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CorpusReaderTest
+{
+    static final String CORPUS =
+	"<document><p><s><w pos=\"DT\">The</w><w pos=\"NN\">dog</w></s>" +
+	"<s><w pos=\"VB\">barks</w></s></p><p><s><w pos=\"RB\">now</w></s></p></document>";
+
+    static final String OTHER =
+	"<corpus><paragraph><sentence><token pos=\"DT\">The</token></sentence></paragraph></corpus>";
+
+    static InputStream stream(String xml)
+    {
+	return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readsSentencesAndParagraphs() throws IOException
+    {
+	CorpusReader cr = new CorpusReader(stream(CORPUS));
+	Vector       s  = (Vector)cr.next();
+	assertEquals(2, s.size());
+	assertEquals("The", ((Token)s.get(0)).getName());
+	assertEquals("DT", ((Token)s.get(0)).getAttrib("pos"));
+	assertEquals(0, cr.paragraph());
+	cr.next();
+	assertEquals(0, cr.paragraph());
+	cr.next();
+	assertEquals(1, cr.paragraph());
+	assertFalse(cr.hasNext());
+	assertFalse(cr.usedTokenXML());
+	cr.close();
+    }
+
+    @Test
+    public void streamInAnotherLayoutIsAnError() throws IOException
+    {
+	CorpusReader cr = new CorpusReader(stream(OTHER));
+	assertThrows(UncheckedIOException.class, () -> cr.hasNext());
+	cr.close();
+    }
+
+    @Test
+    public void fileInAnotherLayoutFallsBackOnTokenReadXML(@TempDir Path dir) throws IOException
+    {
+	Path f = dir.resolve("other.xml");
+	Files.write(f, OTHER.getBytes(StandardCharsets.UTF_8));
+	CorpusReader cr = new CorpusReader(f.toString());
+	cr.hasNext();
+	assertTrue(cr.usedTokenXML());
+	cr.close();
+    }
+
+    @Test
+    public void trainingOnNothingIsAnError()
+    {
+	assertThrows(IllegalArgumentException.class,
+		     () -> new POSTag().train(new ArrayList().iterator(), 1));
+	assertThrows(IllegalArgumentException.class, () -> new POSTagGT().train(new Vector()));
+    }
+}
@@ -0,0 +1,74 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CorpusWriterTest
+{
+    static final String CORPUS =
+	"<corpus><para><sent><tok pos=\"DT\" lemma=\"the\" id=\"1\">The</tok>" +
+	"<tok pos=\"NN\" lemma=\"dog\" id=\"2\">dogs</tok></sent></para>" +
+	"<para><sent><tok pos=\"VB\" lemma=\"bark\">bark</tok></sent></para></corpus>";
+
+    @Test
+    public void writesLikeTheInput() throws IOException
+    {
+	CorpusReader cr  = new CorpusReader(new ByteArrayInputStream(CORPUS.getBytes(StandardCharsets.UTF_8)),
+					    "para", "sent", "tok");
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	CorpusWriter cw  = new CorpusWriter(out, cr);
+	while(cr.hasNext()) {
+	    Vector s = (Vector)cr.next();
+	    ((Token)s.get(0)).putAttrib("pos", "XX");
+	    cw.writeSentence(s, cr.paragraph());
+	}
+	cw.close();
+	cr.close();
+
+	String xml = out.toString("UTF-8");
+	assertTrue(xml.contains("<corpus>"), xml);
+	assertFalse(xml.contains("document"), xml);
+	assertTrue(xml.contains("<tok pos=\"XX\" lemma=\"the\" id=\"1\">The</tok>"), xml);
+	assertTrue(xml.contains("<tok pos=\"NN\" lemma=\"dog\" id=\"2\">dogs</tok>"), xml);
+
+	//The output reads back the same way
+	CorpusReader back = new CorpusReader(new ByteArrayInputStream(out.toByteArray()),
+					     "para", "sent", "tok");
+	Vector s = (Vector)back.next();
+	assertEquals("XX", ((Token)s.get(0)).getAttrib("pos"));
+	assertEquals("dog", ((Token)s.get(1)).getAttrib("lemma"));
+	assertEquals(0, back.paragraph());
+	s = (Vector)back.next();
+	assertEquals("bark", ((Token)s.get(0)).getName());
+	assertEquals(1, back.paragraph());
+	assertEquals("corpus", back.root);
+	back.close();
+    }
+
+    @Test
+    public void taggingClosesTheOutputWhenTheInputIsMalformed() throws IOException
+    {
+	POSTagBigram pt = new POSTagBigram();
+	pt.train(TestCorpus.paragraphs(1, 5, 40), 1);
+
+	String bad = CORPUS.substring(0, CORPUS.indexOf("</para>")) + "</sent><oops></corpus>";
+	CorpusReader cr     = new CorpusReader(new ByteArrayInputStream(bad.getBytes(StandardCharsets.UTF_8)),
+					       "para", "sent", "tok");
+	boolean[]    closed = new boolean[1];
+	OutputStream out    = new ByteArrayOutputStream() {
+		public void close() {
+		    closed[0] = true;
+		}
+	    };
+	CorpusWriter cw = new CorpusWriter(out, cr);
+	assertThrows(UncheckedIOException.class, () -> pt.tag(cr, cw, 2));
+	assertTrue(closed[0]);
+    }
+}
@@ -0,0 +1,124 @@
+package cs481.postag;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModelFileTest
+{
+    @Test
+    public void truncatedModelIsAnIOExceptionAndChangesNothing(@TempDir Path dir) throws IOException
+    {
+	POSTagTrigram saved = new POSTagTrigram();
+	saved.setSmoothing(HMMTagger.smoothing("wb"));
+	saved.train(TestCorpus.paragraphs(1, 5, 40), 1);
+	Path   full  = dir.resolve("full.model");
+	saved.save(full.toString());
+	byte[] bytes = Files.readAllBytes(full);
+
+	POSTagTrigram pt = new POSTagTrigram();
+	pt.train(TestCorpus.paragraphs(2, 3, 30), 1);
+	Smoothing s     = pt.getSmoothing();
+	TagModel  model = pt.getSnapshot();
+	Vector    probe = TestCorpus.strip((Vector)TestCorpus.sentences(TestCorpus.paragraphs(3, 1, 1)).get(0));
+	pt.tagSentence(probe);
+	String[]  tags  = TestCorpus.tags(probe);
+
+	Path cut = dir.resolve("cut.model");
+	for(int len = 0; len < bytes.length; len += Math.max(1, bytes.length / 97)) {
+	    Files.write(cut, Arrays.copyOf(bytes, len));
+	    IOException e = assertThrows(IOException.class, () -> pt.load(cut.toString()));
+	    assertTrue(e.getMessage().endsWith(" is truncated") || e.getMessage().endsWith(" is not a model file"),
+		       len + ": " + e.getMessage());
+	    assertSame(s, pt.getSmoothing());
+	    assertSame(model, pt.getSnapshot());
+	}
+	Files.write(cut, Arrays.copyOf(bytes, bytes.length - 1));
+	assertThrows(IOException.class, () -> pt.load(cut.toString()));
+
+	pt.tagSentence(probe);
+	assertArrayEquals(tags, TestCorpus.tags(probe));
+
+	pt.load(full.toString());
+	assertEquals("wb", pt.getSmoothing().getName());
+    }
+
+    @Test
+    public void badLengthIsAnIOException(@TempDir Path dir) throws IOException
+    {
+	String    f   = dir.resolve("lengths").toString();
+	ModelFile out = ModelFile.create(f, "test");
+	out.writeInts(new int[] {1, 2, 3});
+	out.close();
+	byte[] bytes = Files.readAllBytes(Paths.get(f));
+	int    at    = bytes.length - 16;
+
+	for(int n : new int[] {-1, 1000, Integer.MAX_VALUE}) {
+	    bytes[at]     = (byte)(n >>> 24);
+	    bytes[at + 1] = (byte)(n >>> 16);
+	    bytes[at + 2] = (byte)(n >>> 8);
+	    bytes[at + 3] = (byte)n;
+	    Files.write(Paths.get(f), bytes);
+	    for(int width : new int[] {1, 4, 8}) {
+		ModelFile in = ModelFile.open(f, "test");
+		try {
+		    if(width == 1) {
+			assertThrows(IOException.class, () -> in.readString(), n + "");
+		    } else if(width == 4) {
+			assertThrows(IOException.class, () -> in.readInts(), n + "");
+		    } else {
+			assertThrows(IOException.class, () -> in.readLongs(), n + "");
+		    }
+		} finally {
+		    in.close();
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void countsOfALoadedModelAreReadWhenNeeded(@TempDir Path dir) throws IOException
+    {
+	POSTagBigram saved = new POSTagBigram();
+	saved.train(TestCorpus.paragraphs(1, 5, 40), 1);
+	String f = dir.resolve("bigram.model").toString();
+	saved.save(f);
+
+	POSTagBigram pt = new POSTagBigram();
+	pt.load(f);
+	assertNull(pt.counts);
+	assertArrayEquals(saved.getTransitions(), pt.getTransitions());
+
+	pt.update(TestCorpus.paragraphs(2, 2, 20), 1);
+	saved.update(TestCorpus.paragraphs(2, 2, 20), 1);
+	assertNull(pt.savedCounts);
+	assertArrayEquals(saved.getTransitions(), pt.getTransitions());
+    }
+
+    @Test
+    public void suffixParametersAreSaved(@TempDir Path dir) throws IOException
+    {
+	TrainingCounts c  = TrainingCounts.count(TestCorpus.paragraphs(4, 3, 40), 1);
+	SuffixModel    sm = new SuffixModel(c, 3, 1);
+
+	String    f   = dir.resolve("suffixes").toString();
+	ModelFile out = ModelFile.create(f, "test");
+	out.writeSuffixes(sm);
+	out.close();
+	ModelFile   in   = ModelFile.open(f, "test");
+	SuffixModel back = in.readSuffixes();
+	in.close();
+
+	assertEquals(3, back.getMaxLength());
+	assertEquals(1, back.getMaxFrequency());
+	assertEquals(sm.size(), back.size());
+	for(String w : new String[] {"rare12345", "nn17", "xyz", ""}) {
+	    assertEquals(sm.lookup(w), back.lookup(w), w);
+	}
+    }
+}
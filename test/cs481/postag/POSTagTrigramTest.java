@@ -0,0 +1,87 @@
+package cs481.postag;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class POSTagTrigramTest
+{
+    /**
+     * A corpus where the trigram estimate wins every vote, so deleted
+     * interpolation would give the unigram no weight at all.
+     */
+    static Vector skewed()
+    {
+	Vector para = new Vector();
+	for(int i = 0; i < 50; i++) {
+	    para.add(TestCorpus.sentence("the/DT dog/NN barks/VB"));
+	}
+	para.add(TestCorpus.sentence("a/DT cat/NN sleeps/VB"));
+	Vector training = new Vector();
+	training.add(para);
+	return training;
+    }
+
+    @Test
+    public void everyWeightIsAtLeastTheFloor()
+    {
+	POSTagTrigram pt = new POSTagTrigram();
+	pt.train(skewed());
+	float[] lambda = ((TrigramSnapshot)pt.getSnapshot()).lambda;
+	float   sum    = 0;
+	for(int i = 0; i < lambda.length; i++) {
+	    assertTrue(lambda[i] >= POSTagTrigram.lambdaFloor * 0.99f, "lambda " + i + " = " + lambda[i]);
+	    sum += lambda[i];
+	}
+	assertEquals(1f, sum, 1e-5f);
+    }
+
+    @Test
+    public void noTrigramIsImpossible()
+    {
+	POSTagTrigram pt = new POSTagTrigram();
+	pt.train(skewed());
+	float[] tri = pt.getTrigrams();
+	for(int i = 0; i < tri.length; i++) {
+	    assertFalse(Float.isInfinite(tri[i]) || Float.isNaN(tri[i]), "trigram " + i);
+	}
+    }
+
+    @Test
+    public void unseenOrderIsTaggedByTheWords()
+    {
+	POSTagTrigram pt = new POSTagTrigram();
+	pt.train(skewed());
+
+	Vector sent = TestCorpus.strip(TestCorpus.sentence("barks/VB the/DT dog/NN"));
+	pt.tagSentence(sent);
+	assertArrayEquals(new String[] {"VB", "DT", "NN"}, TestCorpus.tags(sent));
+
+	float[] conf = pt.tagConfidence(TestCorpus.strip(sent));
+	for(int i = 0; i < conf.length; i++) {
+	    assertTrue(conf[i] > 0.5f, "confidence " + conf[i]);
+	}
+    }
+
+    @Test
+    public void deadLatticeNeverGivesTheStartTag()
+    {
+	POSTagTrigram pt = new POSTagTrigram();
+	pt.train(skewed());
+
+	//With no trigram weight left at all every path is impossible
+	TrigramSnapshot m    = (TrigramSnapshot)pt.getSnapshot();
+	float[]         dead = new float[m.pTagTagTag.length];
+	Arrays.fill(dead, Float.NEGATIVE_INFINITY);
+	TrigramSnapshot d = new TrigramSnapshot(m, m.lambda, dead);
+
+	Vector sent = TestCorpus.strip(TestCorpus.sentence("barks/VB the/DT dog/NN"));
+	new ViterbiDecoder().tagSentence(d, sent);
+	for(String t : TestCorpus.tags(sent)) {
+	    assertNotEquals(HMMTagger.StartTag, t);
+	}
+	assertArrayEquals(new String[] {"VB", "DT", "NN"}, TestCorpus.tags(sent));
+    }
+}
@@ -0,0 +1,96 @@
+package cs481.postag;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaggerServerTest
+{
+    @Test
+    public void readLineKeepsAtMostMaxCharacters() throws IOException
+    {
+	Reader        in   = new StringReader("ab c\r\n\nabcdefgh\nlast");
+	StringBuilder line = new StringBuilder();
+	assertEquals(4, TaggerServer.readLine(in, line, 5));
+	assertEquals("ab c", line.toString());
+	assertEquals(0, TaggerServer.readLine(in, line, 5));
+	assertEquals(6, TaggerServer.readLine(in, line, 5));
+	assertEquals("abcde", line.toString());
+	assertEquals(4, TaggerServer.readLine(in, line, 5));
+	assertEquals("last", line.toString());
+	assertEquals(-1, TaggerServer.readLine(in, line, 5));
+    }
+
+    @Test
+    public void failuresGetAnErrorLine()
+    {
+	CompletableFuture f = CompletableFuture.supplyAsync(() -> {
+		throw new IllegalStateException("no model\nat all");
+	    });
+	assertEquals("ERROR no model at all", TaggerServer.reply(f));
+
+	CompletableFuture c = new CompletableFuture();
+	c.cancel(false);
+	assertTrue(TaggerServer.reply(c).startsWith("ERROR "));
+
+	//An untrained tagger can't tag, but the server still answers
+	assertTrue(new TaggerServer(new POSTagBigram()).tagLine("the dog").startsWith("ERROR "));
+    }
+
+    @Test
+    public void anErrorWhileTaggingFailsTheBatch() throws Exception
+    {
+	POSTagBigram pt = new POSTagBigram() {
+		public void tagSentences(Vector[] sents) {
+		    throw new StackOverflowError();
+		}
+	    };
+	MicroBatcher mb = new MicroBatcher(pt, 4, 100, 1);
+	CompletableFuture f = mb.submit(TestCorpus.strip((Vector)TestCorpus.sentences(TestCorpus.paragraphs(3, 1, 1)).get(0)));
+	ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(10, TimeUnit.SECONDS));
+	assertTrue(e.getCause() instanceof StackOverflowError);
+	mb.close();
+    }
+
+    @Test
+    public void longLinesGetAnErrorAndTheConnectionCarriesOn() throws Exception
+    {
+	POSTagBigram pt = new POSTagBigram();
+	pt.train(TestCorpus.paragraphs(1, 5, 40), 1);
+	int max = TaggerServer.maxLineLength;
+	TaggerServer.maxLineLength = 100;
+	final TaggerServer ts = new TaggerServer(pt);
+	try {
+	    ts.bindPort(0);
+	    Thread t = new Thread(() -> {
+		    try {
+			ts.serve();
+		    } catch(IOException e) {
+		    }
+		});
+	    t.start();
+
+	    try(Socket s = new Socket(InetAddress.getLoopbackAddress(), ((InetSocketAddress)ts.getAddress()).getPort())) {
+		Writer         out  = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8);
+		BufferedReader in   = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+		char[]         huge = new char[1000];
+		Arrays.fill(huge, 'x');
+		out.write("dt1 nn2\n" + new String(huge) + "\ndt1\n");
+		out.flush();
+		assertEquals(2, in.readLine().split(" ").length);
+		assertTrue(in.readLine().startsWith("ERROR "));
+		assertEquals(1, in.readLine().split(" ").length);
+	    }
+	} finally {
+	    TaggerServer.maxLineLength = max;
+	    ts.close();
+	}
+    }
+}
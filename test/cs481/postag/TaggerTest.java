@@ -0,0 +1,212 @@
+package cs481.postag;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TaggerTest
+{
+    /**
+     * One new tagger of each kind.
+     */
+    static HMMTagger[] taggers()
+    {
+	return new HMMTagger[] {new POSTag(), new POSTagBigram(), new POSTagGT(), new POSTagTrigram()};
+    }
+
+    /**
+     * A new tagger of the same kind.
+     */
+    static HMMTagger another(HMMTagger pt) throws Exception
+    {
+	return (HMMTagger)pt.getClass().getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * The tags a tagger gives every sentence of a corpus.
+     */
+    static List tags(Tagger pt, Vector gold, int threads)
+    {
+	Vector c = new Vector();
+	for(Object p : gold) {
+	    Vector para = new Vector();
+	    for(Object s : (Vector)p) {
+		para.add(TestCorpus.strip((Vector)s));
+	    }
+	    c.add(para);
+	}
+	pt.tag(c, threads);
+
+	List l = new ArrayList();
+	for(Object s : TestCorpus.sentences(c)) {
+	    l.add(Arrays.asList(TestCorpus.tags((Vector)s)));
+	}
+	return l;
+    }
+
+    @Test
+    public void savedAndLoadedModelTagsTheSame(@TempDir Path dir) throws Exception
+    {
+	Vector gold = TestCorpus.paragraphs(2, 5, 40);
+	Vector sent = TestCorpus.strip((Vector)TestCorpus.sentences(gold).get(3));
+	for(HMMTagger pt : taggers()) {
+	    pt.train(TestCorpus.paragraphs(1, 20, 50), 1);
+	    String f = dir.resolve(pt.kind + ".model").toString();
+	    pt.save(f);
+	    HMMTagger back = another(pt);
+	    back.load(f);
+
+	    assertEquals(tags(pt, gold, 1), tags(back, gold, 2), pt.kind);
+	    assertArrayEquals(pt.getTransitions(), back.getTransitions(), pt.kind);
+	    assertArrayEquals(pt.tagConfidence(sent), back.tagConfidence(sent), pt.kind);
+
+	    TagSequence[] a = pt.tagKBest(sent, 10);
+	    TagSequence[] b = back.tagKBest(sent, 10);
+	    assertEquals(a.length, b.length, pt.kind);
+	    for(int h = 0; h < a.length; h++) {
+		assertArrayEquals(a[h].tags, b[h].tags, pt.kind);
+		assertEquals(a[h].score, b[h].score, pt.kind);
+	    }
+	}
+    }
+
+    @Test
+    public void bestOfKBestIsTagSentence()
+    {
+	for(HMMTagger pt : taggers()) {
+	    pt.train(TestCorpus.paragraphs(1, 10, 50), 1);
+	    for(Object s : TestCorpus.sentences(TestCorpus.paragraphs(5, 2, 10))) {
+		Vector        sent = TestCorpus.strip((Vector)s);
+		TagSequence[] seqs = pt.tagKBest(sent, 5);
+		pt.tagSentence(sent);
+		assertArrayEquals(TestCorpus.tags(sent), seqs[0].tags, pt.kind);
+	    }
+	}
+    }
+
+    @Test
+    public void trainingAndTaggingOnNThreadsMatchesOne() throws Exception
+    {
+	Vector training = TestCorpus.paragraphs(1, 20, 50);
+	Vector gold     = TestCorpus.paragraphs(2, 10, 40);
+	int    batch    = TrainingCounts.batchPerThread;
+	try {
+	    TrainingCounts.batchPerThread = 17;
+	    for(HMMTagger one : taggers()) {
+		HMMTagger many   = another(one);
+		HMMTagger stream = another(one);
+		one.train(training, 1);
+		many.train(training, 4);
+		stream.train(TestCorpus.sentences(training).iterator(), 3);
+
+		assertArrayEquals(one.getTransitions(), many.getTransitions(), one.kind);
+		assertArrayEquals(one.getTransitions(), stream.getTransitions(), one.kind);
+		List tags = tags(one, gold, 1);
+		assertEquals(tags, tags(one, gold, 4), one.kind);
+		assertEquals(tags, tags(many, gold, 3), one.kind);
+		assertEquals(tags, tags(stream, gold, 2), one.kind);
+	    }
+	} finally {
+	    TrainingCounts.batchPerThread = batch;
+	}
+    }
+
+    @Test
+    public void updateMatchesTrainingOnEverything(@TempDir Path dir) throws Exception
+    {
+	Vector a    = TestCorpus.paragraphs(1, 20, 50);
+	Vector b    = TestCorpus.paragraphs(3, 10, 50);
+	Vector ab   = new Vector(a);
+	Vector gold = TestCorpus.paragraphs(2, 5, 40);
+	ab.addAll(b);
+	for(HMMTagger full : taggers()) {
+	    HMMTagger inc    = another(full);
+	    HMMTagger loaded = another(full);
+	    HMMTagger fresh  = another(full);
+	    String    f      = dir.resolve(full.kind + ".model").toString();
+	    full.train(ab, 1);
+	    inc.train(a, 1);
+	    inc.save(f);
+	    inc.update(b, 2);
+	    loaded.load(f);
+	    loaded.update(TestCorpus.sentences(b).iterator(), 1);
+	    fresh.update(ab, 1);
+
+	    List tags = tags(full, gold, 1);
+	    for(HMMTagger pt : new HMMTagger[] {inc, loaded, fresh}) {
+		assertArrayEquals(full.getTransitions(), pt.getTransitions(), full.kind);
+		assertEquals(tags, tags(pt, gold, 1), full.kind);
+	    }
+	}
+    }
+
+    @Test
+    public void emOnNThreadsMatchesOne() throws Exception
+    {
+	Vector gold = TestCorpus.paragraphs(1, 2, 30);
+	List   raw  = TestCorpus.sentences(TestCorpus.paragraphs(11, 20, 30));
+	for(HMMTagger one : new HMMTagger[] {new POSTagBigram(), new POSTagGT()}) {
+	    HMMTagger many = another(one);
+	    one.train(gold, 1);
+	    many.train(gold, 1);
+	    one.trainEM(() -> raw.iterator(), 3, 1, null);
+	    many.trainEM(() -> raw.iterator(), 3, 4, null);
+
+	    float[] t1 = one.getTransitions();
+	    float[] tn = many.getTransitions();
+	    for(int i = 0; i < t1.length; i++) {
+		assertEquals(t1[i], tn[i], 1e-4f * Math.max(1f, Math.abs(t1[i])), one.kind + " at " + i);
+	    }
+	    assertEquals(tags(one, gold, 1), tags(many, gold, 1), one.kind);
+	}
+    }
+
+    @Test
+    public void emStreamsTheSourceOncePerIteration()
+    {
+	Vector gold   = TestCorpus.paragraphs(1, 2, 30);
+	List   raw    = TestCorpus.sentences(TestCorpus.paragraphs(11, 20, 30));
+	int[]  opened = new int[1];
+	POSTagBigram pt = new POSTagBigram();
+	pt.train(gold, 1);
+
+	int saved = BaumWelch.batchPerThread;
+	BaumWelch.batchPerThread = 7;
+	try {
+	    BaumWelch bw = new BaumWelch(pt.model, () -> {
+		    opened[0]++;
+		    return raw.iterator();
+		}, 2);
+	    double[] ll = new double[4];
+	    for(int i = 0; i < ll.length; i++) {
+		bw.iterate();
+		ll[i] = bw.getLogLikelihood();
+		assertTrue(ll[i] < 0, "iteration " + i);
+	    }
+	    bw.close();
+	    assertEquals(1 + ll.length, opened[0]);
+	    //After the first M-step the model is EM's own, so it cannot get worse
+	    for(int i = 2; i < ll.length; i++) {
+		assertTrue(ll[i] >= ll[i - 1] - 1e-6 * Math.abs(ll[i - 1]), "iteration " + i);
+	    }
+	} finally {
+	    BaumWelch.batchPerThread = saved;
+	}
+    }
+
+    @Test
+    public void emNeedsABigramModel()
+    {
+	List raw = TestCorpus.sentences(TestCorpus.paragraphs(11, 2, 10));
+	assertThrows(IllegalStateException.class, () -> new POSTagBigram().trainEM(() -> raw.iterator(), 1, 1, null));
+
+	POSTagTrigram pt = new POSTagTrigram();
+	pt.train(TestCorpus.paragraphs(1, 2, 30), 1);
+	assertThrows(IllegalStateException.class, () -> pt.trainEM(() -> raw.iterator(), 1, 1, null));
+    }
+}
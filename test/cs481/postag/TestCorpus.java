@@ -0,0 +1,120 @@
+package cs481.postag;
+
+import cs481.token.*;
+
+import java.util.*;
+
+/**
+ * Small tagged corpora for the tests.
+ */
+public class TestCorpus
+{
+    /**
+     * Tags of the synthetic corpora
+     */
+    public static final String[] TAGS = {"DT", "NN", "VB", "JJ", "IN", "NNS", "RB", "PRP"};
+
+    /**
+     * A sentence written as word/TAG pairs, e.g. "the/DT dog/NN".
+     *
+     * @param text The pairs, separated by spaces
+     * @return A Vector of Tokens with the attribute &quot;pos&quot;
+     */
+    public static Vector sentence(String text)
+    {
+	Vector s = new Vector();
+	for(String wt : text.split(" ")) {
+	    int   slash = wt.lastIndexOf('/');
+	    Token tok   = new Token(wt.substring(0, slash));
+	    tok.putAttrib("pos", wt.substring(slash + 1));
+	    s.add(tok);
+	}
+	return s;
+    }
+
+    /**
+     * The same sentence without its tags.
+     *
+     * @param sent A Vector of Tokens
+     * @return New Tokens with the same names
+     */
+    public static Vector strip(Vector sent)
+    {
+	Vector s = new Vector();
+	for(Object t : sent) {
+	    s.add(new Token(((Token)t).getName()));
+	}
+	return s;
+    }
+
+    /**
+     * A corpus where each tag mostly follows from the one before, with
+     * ambiguous, rare and capitalized words.
+     *
+     * @param seed  Random seed
+     * @param paras Number of paragraphs
+     * @param sents Sentences per paragraph
+     * @return A Vector of paragraphs of tagged sentences
+     */
+    public static Vector paragraphs(long seed, int paras, int sents)
+    {
+	Random r = new Random(seed);
+	Vector c = new Vector();
+	for(int p = 0; p < paras; p++) {
+	    Vector para = new Vector();
+	    for(int s = 0; s < sents; s++) {
+		Vector sent = new Vector();
+		int    len  = 3 + r.nextInt(20);
+		int    prev = r.nextInt(TAGS.length);
+		for(int i = 0; i < len; i++) {
+		    int t = (prev * 3 + r.nextInt(3)) % TAGS.length;
+		    prev = t;
+
+		    String w = TAGS[t].toLowerCase() + r.nextInt(40);
+		    if(r.nextInt(5) == 0) {
+			w = "amb" + r.nextInt(10);
+		    }
+		    if(r.nextInt(30) == 0) {
+			w = "rare" + r.nextInt(100000);
+		    }
+		    Token tok = new Token(r.nextBoolean() ? w.toUpperCase() : w);
+		    tok.putAttrib("pos", TAGS[t]);
+		    sent.add(tok);
+		}
+		para.add(sent);
+	    }
+	    c.add(para);
+	}
+	return c;
+    }
+
+    /**
+     * All the sentences of a corpus.
+     *
+     * @param paras A Vector of paragraphs
+     * @return The sentences, in order
+     */
+    public static List sentences(Vector paras)
+    {
+	List l = new ArrayList();
+	for(Object p : paras) {
+	    l.addAll((Vector)p);
+	}
+	return l;
+    }
+
+    /**
+     * Tags of a sentence.
+     *
+     * @param sent A Vector of Tokens
+     * @return The &quot;pos&quot; attribute of each
+     */
+    public static String[] tags(Vector sent)
+    {
+	String[] t = new String[sent.size()];
+	for(int i = 0; i < t.length; i++) {
+	    t[i] = (String)((Token)sent.get(i)).getAttrib("pos");
+	}
+	return t;
+    }
+}
@@ -0,0 +1,357 @@
+package cs481.postag;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ViterbiDecoderTest
+{
+    static HMMTagger trained(HMMTagger pt)
+    {
+	pt.train(TestCorpus.paragraphs(7, 4, 50), 1);
+	return pt;
+    }
+
+    static HMMTagger trained(HMMTagger pt, String smoothing)
+    {
+	pt.setSmoothing(HMMTagger.smoothing(smoothing));
+	return trained(pt);
+    }
+
+    /**
+     * Taggers of every model kind, with a couple of smoothings
+     */
+    static HMMTagger[] taggers()
+    {
+	return new HMMTagger[] {trained(new POSTagBigram(), "addone"), trained(new POSTagBigram(), "kn"),
+				trained(new POSTagGT()), trained(new POSTagTrigram(), "addone"),
+				trained(new POSTagTrigram(), "wb")};
+    }
+
+    /**
+     * Short random sentences of word ids, some of them unknown.
+     */
+    static int[][] sentences(HMMTagger pt, long seed, int n)
+    {
+	Random  r     = new Random(seed);
+	int[][] sents = new int[n][];
+	for(int s = 0; s < n; s++) {
+	    sents[s] = new int[1 + r.nextInt(4)];
+	    for(int i = 0; i < sents[s].length; i++) {
+		sents[s][i] = (r.nextInt(4) == 0) ? Vocabulary.UNKNOWN : r.nextInt(pt.model.wordVocab.size());
+	    }
+	}
+	return sents;
+    }
+
+    /**
+     * The tags the decoder considers for a word: those fillTags gives,
+     * or every tag but the start tag if it gives none.
+     */
+    static int[] allowed(TagModel m, int word)
+    {
+	int   numtags = m.getTags().length;
+	int[] tags    = new int[numtags];
+	int   n       = 0;
+	int   found   = m.fillTags(word, tags, 0);
+	for(int q = 0; q < found; q++) {
+	    if(tags[q] != m.getStartTag()) {
+		tags[n++] = tags[q];
+	    }
+	}
+	if(n == 0) {
+	    for(int t = 0; t < numtags; t++) {
+		if(t != m.getStartTag()) {
+		    tags[n++] = t;
+		}
+	    }
+	}
+	return Arrays.copyOf(tags, n);
+    }
+
+    /**
+     * Every tagging of a sentence the decoder considers.
+     */
+    static List taggings(TagModel m, int[] words)
+    {
+	int     len  = words.length;
+	int[][] tags = new int[len][];
+	for(int i = 0; i < len; i++) {
+	    tags[i] = allowed(m, words[i]);
+	}
+
+	List  all = new ArrayList();
+	int[] idx = new int[len];
+	while(true) {
+	    int[] seq = new int[len];
+	    for(int i = 0; i < len; i++) {
+		seq[i] = tags[i][idx[i]];
+	    }
+	    all.add(seq);
+
+	    int i = 0;
+	    while(i < len && ++idx[i] == tags[i].length) {
+		idx[i++] = 0;
+	    }
+	    if(i == len) {
+		return all;
+	    }
+	}
+    }
+
+    /**
+     * Log probability of a sentence and a tagging of it.
+     */
+    static double score(TagModel m, int[] words, int[] seq)
+    {
+	int     numtags = m.getTags().length;
+	int     start   = m.getStartTag();
+	float[] trans   = m.getTransitions();
+	float[] tri     = (m instanceof TrigramModel) ? ((TrigramModel)m).getTrigrams() : null;
+	float[] emit    = new float[numtags];
+
+	double s  = 0;
+	int    t2 = start;
+	int    t1 = start;
+	for(int i = 0; i < words.length; i++) {
+	    m.fillEmissions(words[i], emit);
+	    s += ((tri != null) ? tri[(t2 * numtags + t1) * numtags + seq[i]] : trans[t1 * numtags + seq[i]]) +
+		emit[seq[i]];
+	    t2 = t1;
+	    t1 = seq[i];
+	}
+	return s;
+    }
+
+    static void assertClose(double expected, double actual, String what)
+    {
+	assertEquals(expected, actual, 1e-3 * Math.max(1, Math.abs(expected)), what);
+    }
+
+    @Test
+    public void viterbiFindsTheBestTagging()
+    {
+	for(HMMTagger pt : taggers()) {
+	    TagModel       m = pt.getSnapshot();
+	    ViterbiDecoder d = new ViterbiDecoder();
+	    int[][]        s = sentences(pt, 3, 200);
+	    for(int n = 0; n < s.length; n++) {
+		double best = Double.NEGATIVE_INFINITY;
+		for(Object seq : taggings(m, s[n])) {
+		    best = Math.max(best, score(m, s[n], (int[])seq));
+		}
+
+		int[] out = new int[s[n].length];
+		float p   = d.decode(m, s[n], s[n].length, out);
+		assertClose(best, p, pt.kind + " " + Arrays.toString(s[n]));
+		assertClose(best, score(m, s[n], out), pt.kind + " " + Arrays.toString(s[n]));
+	    }
+	}
+    }
+
+    @Test
+    public void posteriorsAreTheMarginalsOverAllTaggings()
+    {
+	for(HMMTagger pt : taggers()) {
+	    TagModel       m       = pt.getSnapshot();
+	    int            numtags = m.getTags().length;
+	    ViterbiDecoder d       = new ViterbiDecoder();
+	    int[][]        s       = sentences(pt, 5, 200);
+	    for(int n = 0; n < s.length; n++) {
+		int      len    = s[n].length;
+		List     all    = taggings(m, s[n]);
+		double[] scores = new double[all.size()];
+		double   max    = Double.NEGATIVE_INFINITY;
+		for(int q = 0; q < scores.length; q++) {
+		    scores[q] = score(m, s[n], (int[])all.get(q));
+		    max       = Math.max(max, scores[q]);
+		}
+		double   z    = 0;
+		double[] post = new double[len * numtags];
+		for(int q = 0; q < scores.length; q++) {
+		    double p   = Math.exp(scores[q] - max);
+		    int[]  seq = (int[])all.get(q);
+		    z += p;
+		    for(int i = 0; i < len; i++) {
+			post[i * numtags + seq[i]] += p;
+		    }
+		}
+
+		float[] out  = new float[len * numtags];
+		float   logz = d.posteriors(m, s[n], len, out);
+		assertClose(max + Math.log(z), logz, pt.kind + " " + Arrays.toString(s[n]));
+		for(int i = 0; i < len * numtags; i++) {
+		    assertEquals(post[i] / z, out[i], 1e-4, pt.kind + " " + Arrays.toString(s[n]) + " at " + i);
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void expectedTransitionsAreTheBruteForceXi()
+    {
+	for(HMMTagger pt : new HMMTagger[] {trained(new POSTagBigram(), "addone"), trained(new POSTagGT(), "kn")}) {
+	    TagModel       m       = pt.getSnapshot();
+	    int            numtags = m.getTags().length;
+	    int            start   = m.getStartTag();
+	    ViterbiDecoder d       = new ViterbiDecoder();
+	    int[][]        s       = sentences(pt, 19, 150);
+	    for(int n = 0; n < s.length; n++) {
+		int      len    = s[n].length;
+		List     all    = taggings(m, s[n]);
+		double[] scores = new double[all.size()];
+		double   max    = Double.NEGATIVE_INFINITY;
+		for(int q = 0; q < scores.length; q++) {
+		    scores[q] = score(m, s[n], (int[])all.get(q));
+		    max       = Math.max(max, scores[q]);
+		}
+		double   z  = 0;
+		double[] xi = new double[numtags * numtags];
+		for(int q = 0; q < scores.length; q++) {
+		    double p    = Math.exp(scores[q] - max);
+		    int    prev = start;
+		    z += p;
+		    for(int t : (int[])all.get(q)) {
+			xi[prev * numtags + t] += p;
+			prev = t;
+		    }
+		}
+
+		//Starts from counts already there, as the E-step does
+		double[] counts = new double[numtags * numtags];
+		Arrays.fill(counts, 1.0);
+		d.posteriors(m, s[n], len, new float[len * numtags]);
+		d.addTransitions(m, len, counts);
+		for(int i = 0; i < counts.length; i++) {
+		    assertEquals(1.0 + xi[i] / z, counts[i], 1e-4, pt.kind + " " + Arrays.toString(s[n]) + " at " + i);
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void confidenceTagsAsTagSentenceDoes()
+    {
+	for(HMMTagger pt : taggers()) {
+	    for(Object s : TestCorpus.sentences(TestCorpus.paragraphs(9, 2, 10))) {
+		Vector  sent  = TestCorpus.strip((Vector)s);
+		Vector  plain = TestCorpus.strip((Vector)s);
+		float[] conf  = pt.tagConfidence(sent);
+		pt.tagSentence(plain);
+		assertArrayEquals(TestCorpus.tags(plain), TestCorpus.tags(sent), pt.kind);
+		for(int i = 0; i < conf.length; i++) {
+		    assertTrue(conf[i] > 0 && conf[i] <= 1.0001f, pt.kind + " " + conf[i]);
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void batchTaggingMatchesOneSentenceAtATime()
+    {
+	int batch = ViterbiDecoder.batchTokens;
+	try {
+	    for(HMMTagger pt : new HMMTagger[] {trained(new POSTag()), trained(new POSTagBigram()),
+						trained(new POSTagGT()), trained(new POSTagTrigram())}) {
+		for(int beam : new int[] {0, 2}) {
+		    pt.setBeam(beam);
+		    Vector gold   = TestCorpus.paragraphs(11, 6, 30);
+		    List   single = strip(gold);
+		    List   batchd = strip(gold);
+		    for(Object s : single) {
+			pt.tagSentence((Vector)s);
+		    }
+		    ViterbiDecoder.batchTokens = 37;
+		    pt.tagSentences((Vector[])batchd.toArray(new Vector[0]));
+		    ViterbiDecoder.batchTokens = batch;
+
+		    for(int s = 0; s < single.size(); s++) {
+			assertArrayEquals(TestCorpus.tags((Vector)single.get(s)), TestCorpus.tags((Vector)batchd.get(s)),
+					  pt.kind + " beam " + beam + " sentence " + s);
+		    }
+		}
+	    }
+	} finally {
+	    ViterbiDecoder.batchTokens = batch;
+	}
+    }
+
+    static List strip(Vector paras)
+    {
+	List l = new ArrayList();
+	for(Object s : TestCorpus.sentences(paras)) {
+	    l.add(TestCorpus.strip((Vector)s));
+	}
+	return l;
+    }
+
+    @Test
+    public void kbestFindsTheBestTaggingsInOrder()
+    {
+	for(HMMTagger pt : taggers()) {
+	    TagModel       m = pt.getSnapshot();
+	    ViterbiDecoder d = new ViterbiDecoder();
+	    Random         r = new Random(13);
+	    int[][]        s = sentences(pt, 17, 150);
+	    for(int n = 0; n < s.length; n++) {
+		int      len    = s[n].length;
+		int      k      = 1 + r.nextInt(30);
+		List     all    = taggings(m, s[n]);
+		Double[] scores = new Double[all.size()];
+		for(int q = 0; q < scores.length; q++) {
+		    scores[q] = Double.valueOf(score(m, s[n], (int[])all.get(q)));
+		}
+		Arrays.sort(scores, Collections.reverseOrder());
+
+		int[]   out   = new int[k * len];
+		float[] best  = new float[k];
+		int     found = d.kbest(m, s[n], len, k, out, best);
+		String  what  = pt.kind + " " + Arrays.toString(s[n]) + " k=" + k;
+		assertEquals(Math.min(k, scores.length), found, what);
+
+		HashSet seen = new HashSet();
+		for(int h = 0; h < found; h++) {
+		    int[] seq = Arrays.copyOfRange(out, h * len, (h + 1) * len);
+		    assertTrue(seen.add(Arrays.toString(seq)), what);
+		    assertClose(scores[h].doubleValue(), best[h], what);
+		    assertClose(score(m, s[n], seq), best[h], what);
+		}
+
+		int[] viterbi = new int[len];
+		d.decode(m, s[n], len, viterbi);
+		assertClose(score(m, s[n], viterbi), best[0], what);
+	    }
+	}
+    }
+
+    @Test
+    public void hugeKIsClampedToThePossibleTaggings()
+    {
+	for(HMMTagger pt : new HMMTagger[] {trained(new POSTagBigram()), trained(new POSTagTrigram())}) {
+	    int numtags = pt.getTags().length;
+
+	    Vector two = TestCorpus.strip(TestCorpus.sentence("amb1/DT amb2/NN"));
+	    TagSequence[] seqs = pt.tagKBest(two, Integer.MAX_VALUE);
+	    assertTrue(seqs.length > 0);
+	    assertTrue(seqs.length <= (numtags - 1) * (numtags - 1), "" + seqs.length);
+
+	    Vector longer = TestCorpus.strip((Vector)TestCorpus.sentences(TestCorpus.paragraphs(8, 1, 1)).get(0));
+	    seqs = pt.tagKBest(longer, Integer.MAX_VALUE);
+	    assertTrue(seqs.length <= ViterbiDecoder.maxKBest, "" + seqs.length);
+	    for(int h = 1; h < seqs.length; h++) {
+		assertTrue(seqs[h].score <= seqs[h - 1].score);
+	    }
+	}
+    }
+
+    @Test
+    public void kbestLimitNeverOverflows()
+    {
+	assertEquals(ViterbiDecoder.maxKBest, ViterbiDecoder.kbestLimit(Integer.MAX_VALUE, 46, 10000));
+	assertEquals(20 * 20, ViterbiDecoder.kbestLimit(Integer.MAX_VALUE, 21, 2));
+	assertEquals(1, ViterbiDecoder.kbestLimit(Integer.MAX_VALUE, 2, 50));
+	assertEquals(3, ViterbiDecoder.kbestLimit(3, 46, 1));
+    }
+}